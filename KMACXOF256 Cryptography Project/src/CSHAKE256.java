@@ -1,3 +1,6 @@
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
 /**
  * Class implementing shake to provide cSHAKE256
  * @author Qinyu Tao
@@ -15,22 +18,31 @@ public class CSHAKE256 {
     /*Utilizing NIST.SP.800-185
      (with inspiration from the implementation shown in office hours) */
     public byte[] cSHAKE256(byte[] X, int L, byte[] N, byte[] S){
-        Sha3 shake = new Sha3();
         //Validity Conditions: len(N)< 2^2040 and len(S)< 2^2040
-        boolean cType = false;
-        byte[] output = new byte[L / 8];
-        shake.sha3_init();
-        if ((N != null && N.length != 0) || (S != null && S.length != 0)) {
-            byte[] concatenated =
-                    Functions.bytepad(Functions.concat(Functions.encode_string(N), Functions.encode_string(S)), 136);
-            shake.sha3_update(concatenated, concatenated.length);
-            cType = true;
-        }
-        shake.sha3_update(X,X.length);
-        shake.shake_xof(cType);
-        shake.shake_out(output, L / 8);
+        //Start from the cached state after bytepad(encode_string(N) || encode_string(S), 136)
+        CSHAKE256Stream shake = SpongeStateCache.cshake(N, S);
+        shake.update(X);
+        byte[] output = shake.finish(L);
         return output;
 
     }
 
+    /**
+     * Compute cSHAKE256 with output of any length, written to a channel as it is squeezed
+     * @param X the main byte string
+     * @param L the output length in bits, a multiple of 8
+     * @param N a function-name bit string
+     * @param S a customization bit string
+     * @param out the channel receiving the output
+     * @throws IOException if the write fails
+     */
+    public void cSHAKE256(byte[] X, long L, byte[] N, byte[] S, WritableByteChannel out) throws IOException {
+        //Validity Conditions: len(N)< 2^2040 and len(S)< 2^2040
+        if (L < 0 || L % 8 != 0) {
+            throw new IllegalArgumentException("Output length must be a non-negative multiple of 8 bits");
+        }
+        CSHAKE256Stream shake = SpongeStateCache.cshake(N, S);
+        shake.update(X);
+        shake.squeeze(out, L / 8);
+    }
 }
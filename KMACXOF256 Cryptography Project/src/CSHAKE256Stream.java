@@ -0,0 +1,216 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Incremental cSHAKE256: absorb the main input in any number of pieces,
+ * then squeeze as much output as needed.
+ * @author Ethan Nesel
+ */
+public class CSHAKE256Stream {
+    /**
+     * Zero bytes for the bytepad padding, one full block of the cSHAKE256 rate
+     */
+    private static final byte[] ZEROS = new byte[136];
+    /**
+     * The underlying sponge
+     */
+    private final Sha3 shake;
+    /**
+     * True if N or S is non-empty, selecting the cSHAKE padding over plain SHAKE
+     */
+    private final boolean cType;
+    /**
+     * Set once the input has been padded and output squeezing has begun
+     */
+    private boolean finished;
+
+    /**
+     * Start a cSHAKE256 computation
+     * @param N a function-name bit string
+     * @param S a customization bit string
+     */
+    //Utilizing NIST.SP.800-185, same framing as CSHAKE256.cSHAKE256
+    public CSHAKE256Stream(byte[] N, byte[] S) {
+        shake = new Sha3();
+        shake.sha3_init();
+        cType = (N != null && N.length != 0) || (S != null && S.length != 0);
+        if (cType) {
+            updateBytepad(136, N, S);
+        }
+    }
+
+    /**
+     * Snapshot of another computation
+     * @param other the computation to copy
+     */
+    private CSHAKE256Stream(CSHAKE256Stream other) {
+        shake = new Sha3(other.shake);
+        cType = other.cType;
+        finished = other.finished;
+    }
+
+    /**
+     * Clone the current sponge state, so that the same prefix can be
+     * continued with different inputs without absorbing it again
+     * @return an independent copy of this computation
+     */
+    public CSHAKE256Stream copy() {
+        return new CSHAKE256Stream(this);
+    }
+
+    /**
+     * Absorb part of the main input
+     * @param X the input bytes
+     * @param off offset of the first byte to absorb
+     * @param len number of bytes to absorb
+     */
+    public void update(byte[] X, int off, int len) {
+        if (finished) {
+            throw new IllegalStateException("cSHAKE256 input already finished");
+        }
+        shake.sha3_update(X, off, len);
+    }
+
+    /**
+     * Absorb part of the main input
+     * @param X the input bytes
+     */
+    public void update(byte[] X) {
+        update(X, 0, X.length);
+    }
+
+    /**
+     * Absorb bytepad(encode_string(X1) || ... || encode_string(Xn), w) one piece
+     * at a time: each length encoding, each string as is, then the zero padding.
+     * The padded string itself is never built.
+     * @param w the padding width in bytes
+     * @param strings the strings to encode
+     */
+    void updateBytepad(int w, byte[]... strings) {
+        byte[] encoded = new byte[9];
+        int n = Functions.left_encode(w, encoded, 0);
+        update(encoded, 0, n);
+        long total = n;
+        for (byte[] X : strings) {
+            int len = X == null ? 0 : X.length;
+            n = Functions.left_encode(len * 8L, encoded, 0);
+            update(encoded, 0, n);
+            if (len > 0) {
+                update(X, 0, len);
+            }
+            total += n + len;
+        }
+        for (long pad = Math.floorMod(-total, (long) w); pad > 0; pad -= ZEROS.length) {
+            update(ZEROS, 0, (int) Math.min(pad, ZEROS.length));
+        }
+    }
+
+    /**
+     * Absorb the remaining bytes of a buffer, such as a mapped region of a file
+     * @param X the input bytes, from its position to its limit
+     */
+    public void update(ByteBuffer X) {
+        if (finished) {
+            throw new IllegalStateException("cSHAKE256 input already finished");
+        }
+        shake.sha3_update(X);
+    }
+
+    /**
+     * Finish the input and squeeze the first bytes of output
+     * @param out buffer receiving the output
+     * @param off offset of the first output byte in out
+     * @param len number of output bytes
+     */
+    public void finish(byte[] out, int off, int len) {
+        if (finished) {
+            throw new IllegalStateException("cSHAKE256 input already finished");
+        }
+        squeeze(out, off, len);
+    }
+
+    /**
+     * Finish the input and return the first L bits of output
+     * @param L the output length in bits
+     * @return the desired hash value
+     */
+    public byte[] finish(int L) {
+        byte[] output = new byte[L / 8];
+        finish(output, 0, output.length);
+        return output;
+    }
+
+    /**
+     * Squeeze further output, continuing from the previous call.
+     * Finishes the input first if that has not happened yet.
+     * @param out buffer receiving the output
+     * @param off offset of the first output byte in out
+     * @param len number of output bytes
+     */
+    public void squeeze(byte[] out, int off, int len) {
+        pad();
+        shake.shake_out(out, off, len);
+    }
+
+    /**
+     * Squeeze further output into a ByteBuffer, filling it up to its limit
+     * @param dst buffer receiving the output
+     */
+    public void squeeze(ByteBuffer dst) {
+        pad();
+        shake.shake_out(dst);
+    }
+
+    /**
+     * Squeeze further output into a channel, one buffer at a time, so that the
+     * output can be longer than any array (an unbounded XOF stream)
+     * @param out the channel receiving the output
+     * @param len number of output bytes
+     * @throws IOException if the write fails
+     */
+    public void squeeze(WritableByteChannel out, long len) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(len, Functions.FILE_BUFFER_SIZE)];
+        while (len > 0) {
+            int n = (int) Math.min(len, buffer.length);
+            squeeze(buffer, 0, n);
+            Functions.writeFully(out, ByteBuffer.wrap(buffer, 0, n));
+            len -= n;
+        }
+    }
+
+    /**
+     * XOR a slice in place with further output of one computation while
+     * absorbing it into another, in a single pass over the data, when their
+     * sponges line up. Otherwise nothing is done.
+     * @param keystream the computation to squeeze from
+     * @param mac the computation to absorb into, not yet finished
+     * @param data the slice to transform
+     * @param off offset of the first byte
+     * @param len number of bytes
+     * @param absorbInput true to absorb the bytes before the XOR, false to absorb them after
+     * @return true if the slice was processed
+     */
+    static boolean xorSqueezeAbsorb(CSHAKE256Stream keystream, CSHAKE256Stream mac, byte[] data, int off, int len,
+                                    boolean absorbInput) {
+        if (mac.finished) {
+            throw new IllegalStateException("cSHAKE256 input already finished");
+        }
+        keystream.pad();
+        if (!Sha3.sameBlockPosition(keystream.shake, mac.shake)) {
+            return false;
+        }
+        Sha3.xorSqueezeAbsorb(keystream.shake, mac.shake, data, off, len, absorbInput);
+        return true;
+    }
+
+    /**
+     * Apply the cSHAKE/SHAKE padding the first time output is requested
+     */
+    private void pad() {
+        if (!finished) {
+            shake.shake_xof(cType);
+            finished = true;
+        }
+    }
+}
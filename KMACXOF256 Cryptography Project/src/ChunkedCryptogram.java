@@ -0,0 +1,359 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Chunked symmetric cryptogram. The plaintext is split into fixed-size chunks
+ * and every chunk gets its own keystream and tag derived from (ke, ka) and the
+ * chunk index, so chunks can be encrypted and decrypted in parallel and any
+ * byte range can be decrypted without touching the rest of the file.
+ * <p>
+ * Layout: header (the CryptoFile header of type CHUNKED, chunk size, plaintext length, z),
+ * then for each chunk i its ciphertext c_i followed by its 64-byte tag t_i.
+ * <ul>
+ * <li>(ke || ka) <- KMACXOF256(z || pw, “”, 1024, “S”)</li>
+ * <li>c_i <- KMACXOF256(ke, i, |m_i|, “SCE”) XOR m_i</li>
+ * <li>t_i <- KMACXOF256(ka, header || i || m_i, 512, “SCA”)</li>
+ * </ul>
+ * with i as an 8-byte big-endian integer. Every tag covers the header, so a
+ * truncated, extended or reordered cryptogram fails authentication.
+ * @author Ethan Nesel
+ */
+public class ChunkedCryptogram {
+    /**
+     * Common file header (magic, version, type) of every chunked cryptogram
+     */
+    private static final byte[] FILE_HEADER = CryptoFile.header(CryptoFile.CHUNKED);
+    /**
+     * Header length: common header, chunk size, plaintext length, z
+     */
+    private static final int HEADER_LENGTH = CryptoFile.HEADER_LENGTH + 4 + 8 + 64;
+    /**
+     * Length of each chunk tag in bytes
+     */
+    private static final int TAG_LENGTH = 64;
+    /**
+     * Default chunk size for new cryptograms
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+    /**
+     * Largest chunk size written or read. The header is not authenticated until
+     * a chunk tag is checked, so a corrupt chunk size must not size a buffer.
+     */
+    public static final int MAX_CHUNK_SIZE = 1 << 26;
+
+    /**
+     * Header fields and derived keys of one cryptogram
+     */
+    private static final class Header {
+        private final byte[] encoded;
+        private final int chunkSize;
+        private final long length;
+        private final byte[] ke;
+        private final byte[] ka;
+
+        Header(byte[] encoded, int chunkSize, long length, byte[] pw) {
+            this.encoded = encoded;
+            this.chunkSize = chunkSize;
+            this.length = length;
+            byte[] z = Arrays.copyOfRange(encoded, HEADER_LENGTH - 64, HEADER_LENGTH);
+            //(ke || ka) <- KMACXOF256(z || pw, “”, 1024, “S”)
+            byte[] kellka = new KMACXOF256().KMACXOF256(Functions.concat(z, pw), "".getBytes(), 1024,
+                    "S".getBytes());
+            this.ke = Arrays.copyOfRange(kellka, 0, 64);
+            this.ka = Arrays.copyOfRange(kellka, 64, 128);
+        }
+
+        long chunks() {
+            //An empty plaintext still gets one empty, tagged chunk so that its header is authenticated
+            return Math.max(1, (length + chunkSize - 1) / chunkSize);
+        }
+
+        int plainLength(long chunk) {
+            return (int) Math.min(chunkSize, length - chunk * chunkSize);
+        }
+
+        long position(long chunk) {
+            return HEADER_LENGTH + chunk * ((long) chunkSize + TAG_LENGTH);
+        }
+
+        long size() {
+            long last = chunks() - 1;
+            return position(last) + plainLength(last) + TAG_LENGTH;
+        }
+    }
+
+    /**
+     * Encrypt a file into a chunked cryptogram, processing chunks in parallel.
+     * The cryptogram goes to a temporary file that only replaces the output once
+     * every chunk has been written, so a failure never leaves a truncated one.
+     * @param in the plaintext file
+     * @param out the cryptogram file to create
+     * @param pw the passphrase
+     * @param chunkSize the chunk size in bytes
+     * @throws IOException if a file cannot be read or written
+     */
+    public static void encrypt(Path in, Path out, byte[] pw, int chunkSize) throws IOException {
+        if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Chunk size must be positive and at most " + MAX_CHUNK_SIZE);
+        }
+        //Random(512)
+        byte[] z = new byte[64];
+        new SecureRandom().nextBytes(z);
+
+        Path partial = Files.createTempFile(out.toAbsolutePath().getParent(), out.getFileName().toString(), ".partial");
+        try {
+            try (FileChannel source = FileChannel.open(in, StandardOpenOption.READ);
+                 FileChannel target = FileChannel.open(partial, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer encoded = ByteBuffer.allocate(HEADER_LENGTH);
+                encoded.put(FILE_HEADER).putInt(chunkSize).putLong(source.size()).put(z);
+                Header header = new Header(encoded.array(), chunkSize, source.size(), pw);
+                target.write(encoded.flip(), 0);
+                run(new ChunkTask(header, source, target, true, 0, header.chunks()));
+            }
+            Files.move(partial, out, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(partial);
+        }
+    }
+
+    /**
+     * Decrypt a whole chunked cryptogram in parallel. The plaintext goes to a
+     * temporary file that only replaces the output once every chunk is authentic.
+     * @param in the cryptogram file
+     * @param out the plaintext file to create
+     * @param pw the passphrase
+     * @return true if every chunk was authentic and the output was written
+     * @throws IOException if a file cannot be read or written, or is not a chunked cryptogram
+     */
+    public static boolean decrypt(Path in, Path out, byte[] pw) throws IOException {
+        Path partial = Files.createTempFile(out.toAbsolutePath().getParent(), out.getFileName().toString(), ".partial");
+        boolean accepted = false;
+        try {
+            try (FileChannel source = FileChannel.open(in, StandardOpenOption.READ);
+                 FileChannel target = FileChannel.open(partial, StandardOpenOption.WRITE)) {
+                Header header = readHeader(source, pw);
+                accepted = source.size() == header.size()
+                        && run(new ChunkTask(header, source, target, false, 0, header.chunks()));
+            }
+            if (accepted) {
+                Files.move(partial, out, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(partial);
+        }
+        return accepted;
+    }
+
+    /**
+     * Decrypt a byte range of the plaintext, reading and authenticating only
+     * the chunks that overlap it
+     * @param in the cryptogram file
+     * @param pw the passphrase
+     * @param from offset of the first plaintext byte
+     * @param length number of plaintext bytes, clipped to the end of the plaintext
+     * @return the plaintext bytes, or null if a chunk in the range is not authentic
+     * @throws IOException if the file cannot be read or is not a chunked cryptogram
+     */
+    public static byte[] decryptRange(Path in, byte[] pw, long from, int length) throws IOException {
+        try (FileChannel source = FileChannel.open(in, StandardOpenOption.READ)) {
+            Header header = readHeader(source, pw);
+            //Checked before any buffer is sized from the header
+            if (source.size() != header.size()) {
+                throw new IOException("Chunked cryptogram is truncated or corrupt");
+            }
+            if (from < 0 || length < 0 || from > header.length) {
+                throw new IllegalArgumentException("Range outside the plaintext");
+            }
+            int clipped = (int) Math.min(length, header.length - from);
+            byte[] result = new byte[clipped];
+            byte[] chunk = new byte[header.chunkSize + TAG_LENGTH];
+            for (long pos = from; pos < from + clipped; ) {
+                long index = pos / header.chunkSize;
+                int plain = header.plainLength(index);
+                if (!processChunk(header, source, null, false, index, chunk)) {
+                    return null;
+                }
+                int start = (int) (pos - index * header.chunkSize);
+                int count = (int) Math.min(plain - start, from + clipped - pos);
+                System.arraycopy(chunk, start, result, (int) (pos - from), count);
+                pos += count;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Check if a file starts with the chunked cryptogram header
+     * @param file the file to check
+     * @return true if it looks like a chunked cryptogram
+     * @throws IOException if the file cannot be read
+     */
+    public static boolean isChunked(Path file) throws IOException {
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer fileHeader = ByteBuffer.allocate(FILE_HEADER.length);
+            source.read(fileHeader, 0);
+            return Arrays.equals(fileHeader.array(), FILE_HEADER);
+        }
+    }
+
+    /**
+     * Read and check the header of a chunked cryptogram
+     * @param source the cryptogram
+     * @param pw the passphrase
+     * @return the header and derived keys
+     * @throws IOException if the file cannot be read or is not a chunked cryptogram
+     */
+    private static Header readHeader(FileChannel source, byte[] pw) throws IOException {
+        byte[] encoded = new byte[HEADER_LENGTH];
+        Functions.readFully(source, encoded, 0);
+        ByteBuffer fields = ByteBuffer.wrap(encoded);
+        byte[] fileHeader = new byte[FILE_HEADER.length];
+        fields.get(fileHeader);
+        if (!Arrays.equals(fileHeader, FILE_HEADER)) {
+            throw new IOException("Not a chunked cryptogram");
+        }
+        int chunkSize = fields.getInt();
+        long length = fields.getLong();
+        //A length this far below Long.MAX_VALUE keeps the chunk arithmetic from overflowing
+        if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE || length < 0 || length > Long.MAX_VALUE / 2) {
+            throw new IOException("Corrupt chunked cryptogram header");
+        }
+        return new Header(encoded, chunkSize, length, pw);
+    }
+
+    /**
+     * Encrypt or decrypt one chunk. When decrypting, the plaintext is left in
+     * the first bytes of the buffer and is only written out if its tag matches.
+     * @param header header and keys of the cryptogram
+     * @param source file to read the chunk from
+     * @param target file to write the result to, or null to only fill the buffer
+     * @param encrypt true to encrypt, false to decrypt
+     * @param index the chunk index
+     * @param buffer scratch space of at least chunk size + 64 bytes
+     * @return false if decrypting and the chunk's tag does not match
+     * @throws IOException if a file cannot be read or written
+     */
+    private static boolean processChunk(Header header, FileChannel source, FileChannel target, boolean encrypt,
+                                        long index, byte[] buffer) throws IOException {
+        int plain = header.plainLength(index);
+        long plainPosition = index * header.chunkSize;
+        long cipherPosition = header.position(index);
+        byte[] i = ByteBuffer.allocate(8).putLong(index).array();
+
+        //c_i <- KMACXOF256(ke, i, |m_i|, “SCE”) XOR m_i and t_i <- KMACXOF256(ka, header || i || m_i, 512, “SCA”)
+        StreamCipher cipher = new StreamCipher(header.ke, header.ka, "SCE".getBytes(), "SCA".getBytes(), encrypt,
+                i, Functions.concat(header.encoded, i));
+        if (encrypt) {
+            readAt(source, buffer, plain, plainPosition);
+            cipher.process(buffer, 0, plain);
+            System.arraycopy(cipher.tag(), 0, buffer, plain, TAG_LENGTH);
+            writeAt(target, buffer, plain + TAG_LENGTH, cipherPosition);
+            return true;
+        }
+        readAt(source, buffer, plain + TAG_LENGTH, cipherPosition);
+        cipher.process(buffer, 0, plain);
+        if (!Arrays.equals(cipher.tag(), Arrays.copyOfRange(buffer, plain, plain + TAG_LENGTH))) {
+            return false;
+        }
+        if (target != null) {
+            writeAt(target, buffer, plain, plainPosition);
+        }
+        return true;
+    }
+
+    /**
+     * Positional read of exactly len bytes into the start of a buffer
+     * @param channel the file to read from
+     * @param buffer buffer to fill
+     * @param len number of bytes to read
+     * @param position file position of the first byte
+     * @throws IOException if the read fails or the file ends first
+     */
+    private static void readAt(FileChannel channel, byte[] buffer, int len, long position) throws IOException {
+        ByteBuffer dst = ByteBuffer.wrap(buffer, 0, len);
+        while (dst.hasRemaining()) {
+            if (channel.read(dst, position + dst.position()) < 0) {
+                throw new IOException("Truncated chunked cryptogram");
+            }
+        }
+    }
+
+    /**
+     * Positional write of exactly len bytes from the start of a buffer
+     * @param channel the file to write to
+     * @param buffer the bytes to write
+     * @param len number of bytes to write
+     * @param position file position of the first byte
+     * @throws IOException if the write fails
+     */
+    private static void writeAt(FileChannel channel, byte[] buffer, int len, long position) throws IOException {
+        ByteBuffer src = ByteBuffer.wrap(buffer, 0, len);
+        while (src.hasRemaining()) {
+            channel.write(src, position + src.position());
+        }
+    }
+
+    /**
+     * Run a chunk task on the common ForkJoinPool, rethrowing its I/O errors
+     * @param task the task
+     * @return true if every chunk was authentic
+     * @throws IOException if a chunk could not be read or written
+     */
+    private static boolean run(ChunkTask task) throws IOException {
+        try {
+            return ForkJoinPool.commonPool().invoke(task);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Task processing a run of chunks, splitting the run in half until it is a single chunk
+     */
+    private static final class ChunkTask extends RecursiveTask<Boolean> {
+        private static final long serialVersionUID = 1L;
+        private final transient Header header;
+        private final transient FileChannel source;
+        private final transient FileChannel target;
+        private final boolean encrypt;
+        private final long first;
+        private final long count;
+
+        ChunkTask(Header header, FileChannel source, FileChannel target, boolean encrypt, long first, long count) {
+            this.header = header;
+            this.source = source;
+            this.target = target;
+            this.encrypt = encrypt;
+            this.first = first;
+            this.count = count;
+        }
+
+        @Override
+        protected Boolean compute() {
+            if (count <= 1) {
+                try {
+                    return processChunk(header, source, target, encrypt, first,
+                            new byte[header.plainLength(first) + TAG_LENGTH]);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            long half = count / 2;
+            ChunkTask left = new ChunkTask(header, source, target, encrypt, first, half);
+            ChunkTask right = new ChunkTask(header, source, target, encrypt, first + half, count - half);
+            left.fork();
+            boolean rightOk = right.compute();
+            return left.join() && rightOk;
+        }
+    }
+}
@@ -0,0 +1,388 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Versioned binary layout shared by the cryptogram, public key and signature
+ * files. Every file starts with a 6-byte header, the magic “KMCF”, a version
+ * byte and a type byte, followed by the fields of that type:
+ * <ul>
+ * <li>symmetric cryptogram: z, c, t</li>
+ * <li>elliptic cryptogram: Z, c, t</li>
+ * <li>public key: V</li>
+ * <li>signature: h, z</li>
+ * </ul>
+ * Points are written compressed, one field holding x and the parity of y
+ * (EllipticPoint.toCompressed); files from before compression hold two
+ * fields x, y instead, told apart by the length of the first field.
+ * Short fields carry a 4-byte big-endian length. A ciphertext carries an
+ * 8-byte length and follows raw, so it can be streamed straight through a
+ * FileChannel. Files written before this layout are hex or decimal text with
+ * no magic, and are still read through the legacy parsers. Setting the system
+ * property kmacxof256.format=hex keeps writing the legacy text layout.
+ * @author Ethan Nesel
+ */
+public class CryptoFile {
+    /**
+     * Magic number at the start of every binary file
+     */
+    private static final byte[] MAGIC = "KMCF".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * Current layout version
+     */
+    private static final byte VERSION = 1;
+    /**
+     * Header length: magic, version, type
+     */
+    static final int HEADER_LENGTH = MAGIC.length + 2;
+    /**
+     * Largest short field accepted when reading, to reject corrupt lengths early
+     */
+    private static final int MAX_FIELD_LENGTH = 1 << 16;
+    /**
+     * Type of a symmetric cryptogram (z, c, t)
+     */
+    static final byte SYMMETRIC = 1;
+    /**
+     * Type of an elliptic cryptogram (Zx, Zy, c, t)
+     */
+    static final byte ELLIPTIC = 2;
+    /**
+     * Type of a public key file (Vx, Vy)
+     */
+    static final byte PUBLIC_KEY = 3;
+    /**
+     * Type of a signature file (h, z)
+     */
+    static final byte SIGNATURE = 4;
+    /**
+     * Type of a chunked symmetric cryptogram, see ChunkedCryptogram
+     */
+    static final byte CHUNKED = 5;
+
+    /**
+     * Check which layout new files should be written in
+     * @return true for the binary layout, false for the legacy hex text layout
+     */
+    static boolean writeBinary() {
+        return !"hex".equalsIgnoreCase(System.getProperty("kmacxof256.format"));
+    }
+
+    /**
+     * Build the header of a binary file
+     * @param type the file type
+     * @return magic, version and type
+     */
+    static byte[] header(byte type) {
+        byte[] header = Arrays.copyOf(MAGIC, HEADER_LENGTH);
+        header[MAGIC.length] = VERSION;
+        header[MAGIC.length + 1] = type;
+        return header;
+    }
+
+    /**
+     * Find the type of a file from its header
+     * @param in the file
+     * @return the type byte, or -1 if the file has no magic number (legacy text)
+     * @throws IOException if the file cannot be read or has an unknown version
+     */
+    static int type(FileChannel in) throws IOException {
+        if (in.size() < HEADER_LENGTH) {
+            return -1;
+        }
+        byte[] header = new byte[HEADER_LENGTH];
+        Functions.readFully(in, header, 0);
+        if (!Arrays.equals(header, 0, MAGIC.length, MAGIC, 0, MAGIC.length)) {
+            return -1;
+        }
+        if (header[MAGIC.length] != VERSION) {
+            throw new IOException("Unsupported file version " + header[MAGIC.length]);
+        }
+        return header[MAGIC.length + 1];
+    }
+
+    /**
+     * Write the header of a binary file
+     * @param out the file
+     * @param type the file type
+     * @throws IOException if the write fails
+     */
+    static void writeHeader(WritableByteChannel out, byte type) throws IOException {
+        Functions.writeFully(out, ByteBuffer.wrap(header(type)));
+    }
+
+    /**
+     * Write a short field with its 4-byte length
+     * @param out the file
+     * @param field the field bytes
+     * @throws IOException if the write fails
+     */
+    static void writeField(WritableByteChannel out, byte[] field) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(4 + field.length);
+        buf.putInt(field.length).put(field);
+        Functions.writeFully(out, buf.flip());
+    }
+
+    /**
+     * Write a point as one compressed field
+     * @param out the file
+     * @param point the point
+     * @throws IOException if the write fails
+     */
+    static void writePoint(WritableByteChannel out, EllipticPoint point) throws IOException {
+        writeField(out, point.toCompressed());
+    }
+
+    /**
+     * Encrypt a whole file and write the ciphertext and tag that end every
+     * cryptogram: an 8-byte length, raw c and the t field in the binary
+     * layout, or hex(c) “\n” hex(t) in the legacy layout
+     * @param in the plaintext file
+     * @param out the cryptogram, positioned after its leading fields
+     * @param cipher the encrypting stream cipher
+     * @param binary true for the binary layout
+     * @throws IOException if a file cannot be read or written, or the plaintext changes size
+     */
+    static void encryptBody(FileChannel in, WritableByteChannel out, StreamCipher cipher, boolean binary)
+            throws IOException {
+        long length = in.size();
+        if (binary) {
+            Functions.writeFully(out, ByteBuffer.allocate(8).putLong(length).flip());
+        }
+        byte[] chunk = new byte[Functions.FILE_BUFFER_SIZE];
+        HexCodec.Writer hex = binary ? null : new HexCodec.Writer(out, chunk.length);
+        ByteBuffer chunkBuffer = ByteBuffer.wrap(chunk);
+        long total = 0;
+        int read;
+        while ((read = in.read(chunkBuffer.clear())) != -1) {
+            cipher.process(chunk, 0, read);
+            if (binary) {
+                Functions.writeFully(out, ByteBuffer.wrap(chunk, 0, read));
+            } else {
+                hex.write(chunk, 0, read);
+            }
+            total += read;
+        }
+        if (total != length) {
+            throw new IOException("File changed size while encrypting");
+        }
+        if (binary) {
+            writeField(out, cipher.tag());
+        } else {
+            Functions.writeFully(out, ByteBuffer.wrap(("\n" + Functions.bytesToHex(cipher.tag()))
+                    .getBytes(StandardCharsets.US_ASCII)));
+        }
+    }
+
+    /**
+     * Decrypt the ciphertext of a cryptogram, raw or hex, writing the plaintext out
+     * @param in the cryptogram
+     * @param start position of the first ciphertext byte (or hex digit)
+     * @param end position just past the ciphertext
+     * @param hex true if the ciphertext is hex text
+     * @param cipher the decrypting stream cipher
+     * @param out where to write the plaintext
+     * @throws IOException if a file cannot be read or written
+     */
+    static void decryptBody(FileChannel in, long start, long end, boolean hex, StreamCipher cipher,
+                            WritableByteChannel out) throws IOException {
+        byte[] chunk = new byte[Functions.FILE_BUFFER_SIZE];
+        ByteBuffer chunkBuffer = ByteBuffer.wrap(chunk);
+        HexCodec.Reader hexReader = hex ? new HexCodec.Reader(in, start, end, chunk.length) : null;
+        for (long position = start; position < end; ) {
+            int read;
+            if (hex) {
+                read = hexReader.read(chunk, 0, chunk.length);
+                position += 2L * read;
+            } else {
+                chunkBuffer.clear().limit((int) Math.min(chunk.length, end - position));
+                while (chunkBuffer.hasRemaining()) {
+                    if (in.read(chunkBuffer, position + chunkBuffer.position()) < 0) {
+                        throw new EOFException("Unexpected end of cryptogram");
+                    }
+                }
+                read = chunkBuffer.position();
+                position += read;
+            }
+            cipher.process(chunk, 0, read);
+            Functions.writeFully(out, ByteBuffer.wrap(chunk, 0, read));
+        }
+    }
+
+    /**
+     * Step over whitespace (line breaks) in a file, one byte at a time
+     * @param in the channel to read from
+     * @param position where to start; when stepping backwards, the byte before this position is examined first
+     * @param direction 1 to step forwards, -1 to step backwards
+     * @return the first non-whitespace position in the given direction
+     * @throws IOException if the file cannot be read
+     */
+    private static long skipWhitespace(FileChannel in, long position, int direction) throws IOException {
+        ByteBuffer one = ByteBuffer.allocate(1);
+        long next = direction > 0 ? position : position - 1;
+        while (next >= 0 && in.read(one.clear(), next) == 1 && Character.isWhitespace(one.get(0))) {
+            next += direction;
+        }
+        return direction > 0 ? next : next + 1;
+    }
+
+    /**
+     * Field positions of a legacy text cryptogram: short leading tokens, then
+     * the hex ciphertext, then the hex tag, separated by line breaks. Only the
+     * ends of the file are read, so the ciphertext can be any size.
+     */
+    static final class LegacyText {
+        /**
+         * Largest number of bytes the leading tokens may take up
+         */
+        private static final int LEADING_LIMIT = 4096;
+        /**
+         * The leading tokens, as ASCII text
+         */
+        final String[] leading;
+        /**
+         * Position of the first hex digit of c
+         */
+        final long cStart;
+        /**
+         * Position just past the last hex digit of c
+         */
+        final long cEnd;
+        /**
+         * The decoded tag t
+         */
+        final byte[] t;
+
+        /**
+         * Locate the fields of a legacy cryptogram
+         * @param in the cryptogram
+         * @param leadingCount number of tokens ahead of the ciphertext
+         * @param tagLength length of the tag in bytes
+         * @throws IOException if the file cannot be read or does not have that layout
+         */
+        LegacyText(FileChannel in, int leadingCount, int tagLength) throws IOException {
+            byte[] head = new byte[(int) Math.min(LEADING_LIMIT, in.size())];
+            Functions.readFully(in, head, 0);
+            leading = new String[leadingCount];
+            int p = 0;
+            for (int i = 0; i < leadingCount; i++) {
+                while (p < head.length && Character.isWhitespace(head[p])) {
+                    p++;
+                }
+                int tokenStart = p;
+                while (p < head.length && !Character.isWhitespace(head[p])) {
+                    p++;
+                }
+                if (p == tokenStart || p == head.length) {
+                    throw new IOException("Not a legacy cryptogram");
+                }
+                leading[i] = new String(head, tokenStart, p - tokenStart, StandardCharsets.US_ASCII);
+            }
+
+            long tEnd = skipWhitespace(in, in.size(), -1);
+            long tStart = tEnd - 2L * tagLength;
+            if (tStart < p) {
+                throw new IOException("Not a legacy cryptogram");
+            }
+            byte[] tHex = new byte[2 * tagLength];
+            Functions.readFully(in, tHex, tStart);
+            t = new byte[tagLength];
+            try {
+                HexCodec.decode(tHex, 0, tagLength, t, 0);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Corrupt tag in cryptogram", e);
+            }
+            //An empty ciphertext leaves only whitespace between the last leading token and t
+            cStart = Math.min(skipWhitespace(in, p, 1), tStart);
+            cEnd = Math.max(skipWhitespace(in, tStart, -1), cStart);
+        }
+    }
+
+    /**
+     * Sequential reader over the fields of a binary file
+     */
+    static final class Reader {
+        private final FileChannel in;
+        private long position;
+
+        /**
+         * Check the header and position the reader after it
+         * @param in the file
+         * @param type the expected file type
+         * @throws IOException if the file cannot be read or is not of the expected type
+         */
+        Reader(FileChannel in, byte type) throws IOException {
+            if (type(in) != type) {
+                throw new IOException("Not a file of type " + type);
+            }
+            this.in = in;
+            this.position = HEADER_LENGTH;
+        }
+
+        /**
+         * @return the current position in the file
+         */
+        long position() {
+            return position;
+        }
+
+        /**
+         * Read a short field
+         * @return the field bytes
+         * @throws IOException if the file ends early or the length is corrupt
+         */
+        byte[] field() throws IOException {
+            byte[] length = new byte[4];
+            Functions.readFully(in, length, position);
+            int len = ByteBuffer.wrap(length).getInt();
+            if (len < 0 || len > MAX_FIELD_LENGTH) {
+                throw new IOException("Corrupt field length " + len);
+            }
+            byte[] field = new byte[len];
+            Functions.readFully(in, field, position + 4);
+            position += 4 + len;
+            return field;
+        }
+
+        /**
+         * Read a point, compressed or as the two coordinate fields of older files
+         * @return the point
+         * @throws IOException if the file ends early or the point is malformed
+         */
+        //An uncompressed x is a BigInteger below 2^521, at most 66 bytes, so a
+        //compressed field of 67 bytes can never be mistaken for one
+        EllipticPoint point() throws IOException {
+            byte[] first = field();
+            try {
+                if (EllipticPoint.isCompressed(first)) {
+                    return EllipticPoint.fromCompressed(first);
+                }
+                return new EllipticPoint(new BigInteger(first), new BigInteger(field()));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Corrupt point", e);
+            }
+        }
+
+        /**
+         * Read the 8-byte length of a raw field and step over its bytes
+         * @return the position of the raw field's first byte
+         * @throws IOException if the file ends before the raw field does
+         */
+        long skipRaw() throws IOException {
+            byte[] length = new byte[8];
+            Functions.readFully(in, length, position);
+            long len = ByteBuffer.wrap(length).getLong();
+            long start = position + 8;
+            if (len < 0 || len > in.size() - start) {
+                throw new EOFException("Unexpected end of file");
+            }
+            position = start + len;
+            return start;
+        }
+    }
+}
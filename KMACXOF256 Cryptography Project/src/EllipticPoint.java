@@ -1,4 +1,5 @@
 import java.math.BigInteger;
+import java.util.Arrays;
 
 /**
  * Class utilized to represent points used for E521 elliptic cryptography
@@ -7,28 +8,51 @@ import java.math.BigInteger;
  */
 public class EllipticPoint {
     /**
-     * The x-coordinate
+     * The x-coordinate, normalized and never modified after construction
      */
-    private BigInteger x;
+    final FieldElement x;
     /**
-     * The y-coordinate
+     * The y-coordinate, normalized and never modified after construction
      */
-    private BigInteger y;
+    final FieldElement y;
     /**
      * The Mersenne prime used as the modulus
      */
     public static final BigInteger p = BigInteger.valueOf(2).pow(521).subtract(BigInteger.ONE);
     /**
-     * The value d in the E521 curve equation
+     * -d, for the value d = -376014 in the E521 curve equation
      */
-    private static final BigInteger d = BigInteger.valueOf(-376014);
+    private static final int MINUS_D = 376014;
+    /**
+     * The order r of the subgroup generated by G
+     */
+    public static final BigInteger r = BigInteger.valueOf(2).pow(519).subtract(new BigInteger(
+            "337554763258501705789107630418782636071904961214051226618635150085779108655765"));
+    /**
+     * The number of points on E521, n = 4r. Every point on the curve has an
+     * order dividing n, so k * P = (k mod n) * P for any point P.
+     */
+    private static final BigInteger n = r.shiftLeft(2);
+    /**
+     * Width of the NAF used by scale: digits are odd and below 2^(WINDOW - 1)
+     * in magnitude, so each call precomputes 2^(WINDOW - 2) odd multiples
+     */
+    private static final int WINDOW = 5;
+    /**
+     * Length of a compressed point, see toCompressed
+     */
+    public static final int COMPRESSED_LENGTH = 1 + FieldElement.BYTES;
+    /**
+     * The generator G = (4, y) with y even
+     */
+    public static final EllipticPoint G = new EllipticPoint(BigInteger.valueOf(4), false);
 
     /**
      * Constructor for neutral element
      */
     public EllipticPoint() {
-        x = BigInteger.ZERO;
-        y = BigInteger.ONE;
+        x = new FieldElement();
+        y = new FieldElement().set(1);
     }
 
     /**
@@ -37,26 +61,75 @@ public class EllipticPoint {
      * @param y coordinate y
      */
     public EllipticPoint(BigInteger x, BigInteger y) {
-        this.x = x;
-        this.y = y;
+        this.x = new FieldElement(x);
+        this.y = new FieldElement(y);
+    }
+
+    /**
+     * Constructor for point given field element coordinates, which the point takes over
+     * @param x coordinate x
+     * @param y coordinate y
+     */
+    EllipticPoint(FieldElement x, FieldElement y) {
+        this.x = x.normalize();
+        this.y = y.normalize();
     }
 
     /**
      * Constructor for point given x and lsb
      * @param x coordinate x
      * @param lsb least significant bit of y
+     * @throws IllegalArgumentException if no point on E521 has that x-coordinate
      */
     public EllipticPoint(BigInteger x, boolean lsb) {
-        //𝑦=±√(1−𝑥2)/(1+376014𝑥2) mod 𝑝
-        this.x = x;
-        BigInteger dPos = new BigInteger("376014");
-        BigInteger xSquared = (x.modPow(BigInteger.TWO,p));
+        this(new FieldElement(x), lsb);
+    }
 
-        BigInteger num = (BigInteger.ONE.subtract(xSquared)).mod(p);
-        BigInteger denPart = (dPos.multiply(xSquared)).mod(p);
-        BigInteger den = (BigInteger.ONE.add(denPart)).mod(p);
-        this.y = sqrt(num.multiply(den.modInverse(p)).mod(p), lsb);
+    /**
+     * Constructor for point given a field element x, which the point takes over, and lsb
+     * @param x coordinate x
+     * @param lsb least significant bit of y
+     * @throws IllegalArgumentException if no point on E521 has that x-coordinate
+     */
+    EllipticPoint(FieldElement x, boolean lsb) {
+        //𝑦=±√(1−𝑥2)/(1+376014𝑥2) mod 𝑝, as one exponentiation with no separate inversion
+        this.x = x.normalize();
+        FieldElement one = new FieldElement().set(1);
+        FieldElement xSquared = new FieldElement().square(x);
+        FieldElement num = new FieldElement().sub(one, xSquared);
+        FieldElement den = new FieldElement().mulSmall(xSquared, MINUS_D);
+        den.add(one, den);
+        this.y = new FieldElement();
+        if (!this.y.sqrtRatio(num, den, lsb, xSquared, one, new FieldElement())) {
+            throw new IllegalArgumentException("No point on E521 has this x-coordinate");
+        }
+        this.y.normalize();
+    }
 
+    /**
+     * Decode a compressed point, see toCompressed
+     * @param encoded the prefix byte and x
+     * @return the point
+     * @throws IllegalArgumentException if the encoding is malformed or no point has that x-coordinate
+     */
+    public static EllipticPoint fromCompressed(byte[] encoded) {
+        if (!isCompressed(encoded)) {
+            throw new IllegalArgumentException("Not a compressed point");
+        }
+        BigInteger x = new BigInteger(1, Arrays.copyOfRange(encoded, 1, encoded.length));
+        if (x.compareTo(p) >= 0) {
+            throw new IllegalArgumentException("Coordinate out of range");
+        }
+        return new EllipticPoint(new FieldElement(x), encoded[0] == 3);
+    }
+
+    /**
+     * Check whether bytes have the shape of a compressed point
+     * @param encoded the bytes
+     * @return true for COMPRESSED_LENGTH bytes starting with 2 or 3
+     */
+    static boolean isCompressed(byte[] encoded) {
+        return encoded.length == COMPRESSED_LENGTH && (encoded[0] == 2 || encoded[0] == 3);
     }
 
     /**
@@ -68,17 +141,24 @@ public class EllipticPoint {
      * @return  a square root r of v mod p with r mod 2 = 1 iff lsb = true
      *          if such a root exists, otherwise null.
      */
-    //Method taken directly from project description
+    //Method adapted from the project description, with the exponentiation done by FieldElement
     public static BigInteger sqrt(BigInteger v, boolean lsb) {
         assert (p.testBit(0) && p.testBit(1)); // p = 3 (mod 4)
-        if (v.signum() == 0) {
-            return BigInteger.ZERO;
-        }
-        BigInteger r = v.modPow(p.shiftRight(2).add(BigInteger.ONE), p);
-        if (r.testBit(0) != lsb) {
-            r = p.subtract(r); // correct the lsb
-        }
-        return (r.multiply(r).subtract(v).mod(p).signum() == 0) ? r : null;
+        FieldElement r = new FieldElement();
+        return r.sqrt(new FieldElement(v), lsb, new FieldElement()) ? r.toBigInteger() : null;
+    }
+
+    /**
+     * Encode the point compressed: one byte 2 + (y mod 2), then x as 66 big-endian bytes.
+     * The other root of y differs only in its least significant bit, so
+     * x and that bit determine the point.
+     * @return the COMPRESSED_LENGTH byte encoding
+     */
+    public byte[] toCompressed() {
+        byte[] encoded = new byte[COMPRESSED_LENGTH];
+        encoded[0] = (byte) (y.isOdd() ? 3 : 2);
+        x.toBytes(encoded, 1);
+        return encoded;
     }
 
     /**
@@ -86,7 +166,7 @@ public class EllipticPoint {
      * @return the value of the x-coordinate
      */
     public BigInteger getX() {
-        return x;
+        return x.toBigInteger();
     }
 
     /**
@@ -94,7 +174,7 @@ public class EllipticPoint {
      * @return the value of the y-coordinate
      */
     public BigInteger getY() {
-        return y;
+        return y.toBigInteger();
     }
 
     /**
@@ -103,7 +183,7 @@ public class EllipticPoint {
      * @return true if equal and false if not
      */
     public boolean equals(EllipticPoint pt) {
-        return this.x.equals(pt.getX()) && this.y.equals(pt.getY());
+        return this.x.equals(pt.x) && this.y.equals(pt.y);
     }
 
     /**
@@ -111,7 +191,7 @@ public class EllipticPoint {
      * @return the opposite of the point the method is applied to
      */
     public EllipticPoint opposite() {
-        return new EllipticPoint(BigInteger.valueOf(-1).multiply(this.x), this.y);
+        return new EllipticPoint(new FieldElement().negate(this.x), new FieldElement(this.y));
     }
 
     /**
@@ -120,53 +200,184 @@ public class EllipticPoint {
      * @return the summed point result
      */
     public EllipticPoint sum(EllipticPoint pt){
-        BigInteger xOne = this.getX();
-        BigInteger yOne = this.getY();
-        BigInteger xTwo = pt.getX();
-        BigInteger yTwo = pt.getY();
-
-        //The parts of the Edwards point addition formula
-        //Notice we must mod each big integer operation
-        BigInteger x1y2 = (xOne.multiply(yTwo)).mod(p);
-        BigInteger y1x2 = (yOne.multiply(xTwo)).mod(p);
-        BigInteger x1x2 = (xOne.multiply(xTwo)).mod(p);
-        BigInteger y1y2 = (yOne.multiply(yTwo)).mod(p);
-
-        BigInteger x1x2y1y2 = (x1x2.multiply(y1y2)).mod(p);
-        BigInteger dx1x2y1y2 = (d.multiply(x1x2y1y2)).mod(p);
-
-        BigInteger xNum = (x1y2.add(y1x2)).mod(p);
-        BigInteger xDen = (BigInteger.ONE.add(dx1x2y1y2)).mod(p);
-
-        BigInteger yNum = (y1y2.subtract(x1x2)).mod(p);
-        BigInteger yDen = (BigInteger.ONE.subtract(dx1x2y1y2)).mod(p);
-
-        BigInteger xOut = (xNum.multiply(xDen.modInverse(p)));
-        BigInteger yOut = (yNum.multiply(yDen.modInverse(p)));
-
-        return new EllipticPoint(xOut.mod(p), yOut.mod(p));
+        //Edwards addition in extended coordinates, one inversion instead of two
+        ExtendedPoint result = new ExtendedPoint(this);
+        result.add(new ExtendedPoint(pt));
+        return result.toAffine();
     }
 
     /**
      * Scalar multiplication of scalar k against an EllipticPoint
      * @param k the scalar
      * @param pt a point
-     * @return
+     * @return the point k * pt
      */
-    /* Method inspired from pseudocode at
-       https://andrea.corbellini.name/2015/05/17/elliptic-curve-cryptography-a-gentle-introduction/
+    /* Width-5 NAF: the scalar, reduced mod n, is recoded into odd signed digits
+       with at least four zeros between nonzero ones, so a 521-bit scalar costs
+       521 doublings and about 87 additions of precomputed +-pt, +-3pt, ..., +-15pt,
+       against about 260 additions for plain double-and-add
      */
-
     public static EllipticPoint scale(BigInteger k, EllipticPoint pt) {
-        String bitK = k.toString(2);
-        EllipticPoint result = new EllipticPoint();
-        EllipticPoint addend = pt;
-        for (int i = bitK.length() - 1; i >= 0; i--) {
-            if (bitK.charAt(i) == '1') {
-                result = result.sum(addend);
+        return interleave(new BigInteger[] {k.mod(n)}, new OddMultiples[] {new OddMultiples(pt, WINDOW)}).toAffine();
+    }
+
+    /**
+     * Scalar multiplication of scalar k against a point with a prebuilt table
+     * @param k the scalar
+     * @param table the table of the point, see table or KeyRing
+     * @return the point k * pt
+     */
+    static EllipticPoint scale(BigInteger k, OddMultiples table) {
+        return interleave(new BigInteger[] {k.mod(n)}, new OddMultiples[] {table}).toAffine();
+    }
+
+    /**
+     * Simultaneous multiplication of two scalars against two points
+     * @param a the scalar for P
+     * @param P the first point
+     * @param b the scalar for Q
+     * @param Q the second point
+     * @return the point a * P + b * Q
+     */
+    //Straus' method: both width-5 NAFs are walked together over one chain of
+    //doublings, so the cost is about that of a single scale
+    public static EllipticPoint scale(BigInteger a, EllipticPoint P, BigInteger b, EllipticPoint Q) {
+        return interleave(new BigInteger[] {a.mod(n), b.mod(n)},
+                new OddMultiples[] {new OddMultiples(P, WINDOW), new OddMultiples(Q, WINDOW)}).toAffine();
+    }
+
+    /**
+     * Interleaved NAF multiplication, the sum of k_t * P_t over every term t,
+     * sharing one chain of doublings
+     * @param scalars the non-negative scalar of each term
+     * @param tables the odd multiples of each term's point, at any NAF width
+     * @return the sum, in extended coordinates
+     */
+    static ExtendedPoint interleave(BigInteger[] scalars, OddMultiples[] tables) {
+        int[][] nafs = new int[scalars.length][];
+        for (int t = 0; t < scalars.length; t++) {
+            nafs[t] = wnaf(scalars[t], tables[t].window);
+        }
+        int top = -1;
+        for (int[] naf : nafs) {
+            for (int i = naf.length - 1; i > top; i--) {
+                if (naf[i] != 0) {
+                    top = i;
+                }
+            }
+        }
+        ExtendedPoint result = new ExtendedPoint();
+        for (int i = top; i >= 0; i--) {
+            result.dbl();
+            for (int t = 0; t < nafs.length; t++) {
+                int digit = i < nafs[t].length ? nafs[t][i] : 0;
+                if (digit > 0) {
+                    result.add(tables[t].odd[digit >> 1]);
+                } else if (digit < 0) {
+                    result.add(tables[t].negated[-digit >> 1]);
+                }
             }
-            addend = addend.sum(addend);
         }
         return result;
     }
+
+    /**
+     * Recode a non-negative scalar into width-w non-adjacent form
+     * @param k the scalar, k &gt;= 0
+     * @param w the window width, 2 &lt;= w &lt;= 30
+     * @return digits d_i, least significant first, with k = sum of d_i * 2^i; every
+     *         nonzero digit is odd, below 2^(w - 1) in magnitude and followed by
+     *         at least w - 1 zeros
+     */
+    //Right to left over the bits with a carry, reading w bits at a time with
+    //testBit so the scalar is never copied or shifted
+    static int[] wnaf(BigInteger k, int w) {
+        int[] naf = new int[k.bitLength() + 1];
+        int width = 1 << w;
+        int carry = 0;
+        int pos = 0;
+        while (pos < naf.length) {
+            //A bit equal to the carry leaves a zero digit here, with the carry unchanged
+            if ((k.testBit(pos) ? 1 : 0) == carry) {
+                pos++;
+                continue;
+            }
+            int window = carry;
+            for (int b = 0; b < w; b++) {
+                if (k.testBit(pos + b)) {
+                    window += 1 << b;
+                }
+            }
+            if (window < width / 2) {
+                carry = 0;
+                naf[pos] = window;
+            } else {
+                carry = 1;
+                naf[pos] = window - width;
+            }
+            pos += w;
+        }
+        return naf;
+    }
+
+    /**
+     * Scalar multiplication of scalar k against the generator G
+     * @param k the scalar
+     * @return the point k * G
+     */
+    //Fixed-base multiplication from the precomputed table, no doublings
+    public static EllipticPoint scaleG(BigInteger k) {
+        return FixedBaseTable.generator().multiply(k);
+    }
+
+    /**
+     * Simultaneous multiplication a * G + b * Q, as used to verify a signature
+     * @param a the scalar for G
+     * @param b the scalar for Q
+     * @param Q a point
+     * @return the point a * G + b * Q
+     */
+    //Straus' method with G's odd multiples precomputed once for a wider NAF,
+    //so only Q's table is built per call
+    public static EllipticPoint scaleG(BigInteger a, BigInteger b, EllipticPoint Q) {
+        return scaleG(a, b, table(Q)).toAffine();
+    }
+
+    /**
+     * Simultaneous multiplication a * G + b * Q against a prebuilt table for Q,
+     * left in extended coordinates so that callers can batch the inversion
+     * @param a the scalar for G
+     * @param b the scalar for Q
+     * @param qTable the table of Q, see table
+     * @return the point a * G + b * Q
+     */
+    static ExtendedPoint scaleG(BigInteger a, BigInteger b, OddMultiples qTable) {
+        return interleave(new BigInteger[] {a.mod(r), b.mod(n)},
+                new OddMultiples[] {FixedBaseTable.generator().odd, qTable});
+    }
+
+    /**
+     * Simultaneous multiplication a * G + b * Q against a fixed-base table for Q
+     * @param a the scalar for G
+     * @param b the scalar for Q
+     * @param qTable the fixed-base table of Q, a point of order r
+     * @return the point a * G + b * Q, in extended coordinates
+     */
+    //Two fixed-base multiplications summed into one point, no doublings at all
+    static ExtendedPoint scaleG(BigInteger a, BigInteger b, FixedBaseTable qTable) {
+        ExtendedPoint sum = new ExtendedPoint();
+        FixedBaseTable.generator().addTo(sum, a);
+        qTable.addTo(sum, b);
+        return sum;
+    }
+
+    /**
+     * Build the table of odd multiples scale and scaleG use for a point, to be
+     * reused across multiplications of the same point
+     * @param pt the point
+     * @return the table
+     */
+    static OddMultiples table(EllipticPoint pt) {
+        return new OddMultiples(pt, WINDOW);
+    }
 }
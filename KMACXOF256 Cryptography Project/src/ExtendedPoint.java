@@ -0,0 +1,217 @@
+import java.nio.LongBuffer;
+
+/**
+ * E521 point in extended twisted Edwards coordinates (X:Y:Z:T), with
+ * x = X/Z, y = Y/Z and T = XY/Z. Addition and doubling need no inversion,
+ * so a whole scalar multiplication costs one inversion, when converting
+ * the result back to affine.
+ * <p>
+ * Formulas are add-2008-hwcd and dbl-2008-hwcd (Hisil, Wong, Carter, Dawson,
+ * "Twisted Edwards Curves Revisited", 2008) with a = 1 and d = -376014.
+ * Since d is not a square mod p, addition is complete: it also covers
+ * doubling, the neutral element and opposite points.
+ * <p>
+ * Coordinates are FieldElements updated in place, with five scratch
+ * elements allocated on first use, so adding and doubling create no garbage.
+ * A point is not safe to share between threads while it is being updated.
+ * @author Ethan Nesel
+ */
+class ExtendedPoint {
+    /**
+     * -d, the curve constant folded in with FieldElement.mulSmall
+     */
+    private static final int MINUS_D = 376014;
+
+    private final FieldElement X;
+    private final FieldElement Y;
+    private final FieldElement Z;
+    private final FieldElement T;
+    /**
+     * Scratch elements for add and dbl, null until first needed
+     */
+    private FieldElement t0, t1, t2, t3, t4;
+
+    /**
+     * The neutral element (0:1:1:0)
+     */
+    ExtendedPoint() {
+        X = new FieldElement();
+        Y = new FieldElement().set(1);
+        Z = new FieldElement().set(1);
+        T = new FieldElement();
+    }
+
+    /**
+     * Lift an affine point, (x:y:1:xy)
+     * @param pt the affine point
+     */
+    ExtendedPoint(EllipticPoint pt) {
+        X = new FieldElement(pt.x);
+        Y = new FieldElement(pt.y);
+        Z = new FieldElement().set(1);
+        T = new FieldElement().mul(X, Y);
+    }
+
+    /**
+     * Copy another point
+     * @param other the point to copy
+     */
+    ExtendedPoint(ExtendedPoint other) {
+        X = new FieldElement(other.X);
+        Y = new FieldElement(other.Y);
+        Z = new FieldElement(other.Z);
+        T = new FieldElement(other.T);
+    }
+
+    /**
+     * Load a point stored as the limbs of X, Y, Z and T, see store
+     * @param table the table
+     * @param offset index of the first limb
+     */
+    ExtendedPoint(LongBuffer table, int offset) {
+        X = new FieldElement().load(table, offset);
+        Y = new FieldElement().load(table, offset + FieldElement.LIMBS);
+        Z = new FieldElement().load(table, offset + 2 * FieldElement.LIMBS);
+        T = new FieldElement().load(table, offset + 3 * FieldElement.LIMBS);
+    }
+
+    /**
+     * Store the normalized limbs of X, Y, Z and T in a table, 4 * LIMBS longs
+     * @param table the table
+     * @param offset index of the first limb
+     */
+    void store(long[] table, int offset) {
+        X.store(table, offset);
+        Y.store(table, offset + FieldElement.LIMBS);
+        Z.store(table, offset + 2 * FieldElement.LIMBS);
+        T.store(table, offset + 3 * FieldElement.LIMBS);
+    }
+
+    /**
+     * Allocate the scratch elements the first time they are needed
+     */
+    private void scratch() {
+        if (t0 == null) {
+            t0 = new FieldElement();
+            t1 = new FieldElement();
+            t2 = new FieldElement();
+            t3 = new FieldElement();
+            t4 = new FieldElement();
+        }
+    }
+
+    /**
+     * Replace this point with this + q
+     * @param q the point to add, which may be this point
+     */
+    //add-2008-hwcd, 9 multiplications:
+    //A = X1 X2, B = Y1 Y2, C = d T1 T2, D = Z1 Z2, E = (X1 + Y1)(X2 + Y2) - A - B,
+    //F = D - C, G = D + C, H = B - A, X3 = E F, Y3 = G H, T3 = E H, Z3 = F G.
+    //Every input of q is read before the matching coordinate of this is overwritten.
+    void add(ExtendedPoint q) {
+        scratch();
+        t0.mul(X, q.X);                                 //A
+        t1.mul(Y, q.Y);                                 //B
+        t2.mul(T, q.T).mulSmall(t2, MINUS_D);           //-C
+        t3.mul(Z, q.Z);                                 //D
+        t4.add(X, Y);
+        Z.add(q.X, q.Y);
+        t4.mul(t4, Z).sub(t4, t0).sub(t4, t1);          //E
+        Z.add(t3, t2);                                  //F
+        T.sub(t3, t2);                                  //G
+        t0.sub(t1, t0);                                 //H
+        X.mul(t4, Z);
+        Y.mul(T, t0);
+        Z.mul(Z, T);
+        T.mul(t4, t0);
+    }
+
+    /**
+     * Replace this point with this + q for an affine point q = (x, y) stored in
+     * a table as the limbs of x, y and -d * x * y, see FixedBaseTable
+     * @param table the table, on the heap or mapped from a table file
+     * @param offset index of the first limb of q
+     * @param negate true to add -q = (-x, y) instead
+     */
+    //madd-2008-hwcd: add-2008-hwcd with Z2 = 1 and d T2 precomputed, 8 multiplications
+    void addAffine(LongBuffer table, int offset, boolean negate) {
+        scratch();
+        t2.load(table, offset);                         //x2
+        t3.load(table, offset + FieldElement.LIMBS);    //y2
+        t4.load(table, offset + 2 * FieldElement.LIMBS); //-d x2 y2
+        if (negate) {
+            t2.negate(t2);
+            t4.negate(t4);
+        }
+        t0.mul(X, t2);                                  //A
+        t1.mul(Y, t3);                                  //B
+        t2.add(t2, t3);
+        t3.add(X, Y).mul(t3, t2).sub(t3, t0).sub(t3, t1); //E
+        t4.mul(T, t4);                                  //-C
+        t0.sub(t1, t0);                                 //H
+        t1.add(Z, t4);                                  //F
+        t2.sub(Z, t4);                                  //G
+        X.mul(t3, t1);
+        Y.mul(t2, t0);
+        T.mul(t3, t0);
+        Z.mul(t1, t2);
+    }
+
+    /**
+     * Replace this point with 2 * this
+     */
+    //dbl-2008-hwcd, 4 multiplications and 4 squarings:
+    //A = X^2, B = Y^2, C = 2 Z^2, E = (X + Y)^2 - A - B, G = A + B, F = G - C,
+    //H = A - B, X3 = E F, Y3 = G H, T3 = E H, Z3 = F G.
+    void dbl() {
+        scratch();
+        t0.square(X);                                   //A
+        t1.square(Y);                                   //B
+        t2.square(Z).add(t2, t2);                       //C
+        t3.add(X, Y).square(t3).sub(t3, t0).sub(t3, t1); //E
+        t4.add(t0, t1);                                 //G
+        t0.sub(t0, t1);                                 //H
+        t2.sub(t4, t2);                                 //F
+        X.mul(t3, t2);
+        Y.mul(t4, t0);
+        T.mul(t3, t0);
+        Z.mul(t2, t4);
+    }
+
+    /**
+     * Replace this point with its opposite, (-X:Y:Z:-T)
+     */
+    void negate() {
+        X.negate(X);
+        T.negate(T);
+    }
+
+    /**
+     * Convert back to affine coordinates with a single inversion
+     * @return the affine point (X/Z, Y/Z)
+     */
+    EllipticPoint toAffine() {
+        scratch();
+        t0.invert(Z, t1, t2);
+        return new EllipticPoint(new FieldElement().mul(X, t0), new FieldElement().mul(Y, t0));
+    }
+
+    /**
+     * Convert many points back to affine coordinates with a single inversion
+     * @param points the points to convert
+     * @return the affine points, in the same order
+     */
+    static EllipticPoint[] toAffine(ExtendedPoint[] points) {
+        FieldElement[] zInverse = new FieldElement[points.length];
+        for (int i = 0; i < points.length; i++) {
+            zInverse[i] = new FieldElement(points[i].Z);
+        }
+        FieldElement.invertAll(zInverse);
+        EllipticPoint[] affine = new EllipticPoint[points.length];
+        for (int i = 0; i < points.length; i++) {
+            affine[i] = new EllipticPoint(new FieldElement().mul(points[i].X, zInverse[i]),
+                    new FieldElement().mul(points[i].Y, zInverse[i]));
+        }
+        return affine;
+    }
+}
@@ -0,0 +1,647 @@
+import java.math.BigInteger;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * Mutable element of the E521 base field GF(p), p = 2^521 - 1, held in 18
+ * limbs of 29 bits (least significant first). Every operation writes into
+ * this element and allocates nothing, so the point arithmetic in
+ * ExtendedPoint can run a whole scalar multiplication without creating
+ * garbage. The result may alias either operand.
+ * <p>
+ * Because p is a Mersenne prime, 2^521 = 1 (mod p) and 2^522 = 2 (mod p):
+ * product columns past the top limb are folded back in with a shift instead
+ * of a division. Results are kept loosely reduced (every limb at most
+ * 2^29 + 2^8, value below 2^522); normalize() gives the unique
+ * representative in [0, p) needed for comparison and conversion.
+ * @author Ethan Nesel
+ */
+class FieldElement {
+    /**
+     * Number of limbs
+     */
+    static final int LIMBS = 18;
+    /**
+     * Bytes in the big-endian encoding of an element, ceil(521 / 8)
+     */
+    static final int BYTES = 66;
+    /**
+     * Bits per limb, 18 * 29 = 522 bits
+     */
+    static final int BITS = 29;
+    private static final long MASK = (1L << BITS) - 1;
+    /**
+     * Bits of p held in the top limb, 521 - 17 * 29
+     */
+    private static final int TOP_BITS = 28;
+    private static final long TOP_MASK = (1L << TOP_BITS) - 1;
+    /**
+     * 4p limb by limb, added before subtracting so no limb goes negative
+     */
+    private static final long[] FOUR_P = new long[LIMBS];
+
+    static {
+        Arrays.fill(FOUR_P, (MASK << 2));
+        FOUR_P[LIMBS - 1] = TOP_MASK << 2;
+    }
+
+    /**
+     * The limbs, l[0] least significant
+     */
+    final long[] l = new long[LIMBS];
+
+    /**
+     * The element zero
+     */
+    FieldElement() {
+    }
+
+    /**
+     * The element v mod p
+     * @param v the value
+     */
+    FieldElement(BigInteger v) {
+        set(v);
+    }
+
+    /**
+     * Copy another element
+     * @param a the element to copy
+     */
+    FieldElement(FieldElement a) {
+        set(a);
+    }
+
+    /**
+     * Set this element to v mod p
+     * @param v the value
+     * @return this element
+     */
+    FieldElement set(BigInteger v) {
+        byte[] bytes = v.mod(EllipticPoint.p).toByteArray();
+        //Read the big-endian bytes from the end, 8 bits at a time into 29-bit limbs
+        Arrays.fill(l, 0);
+        int bit = 0;
+        for (int i = bytes.length - 1; i >= 0 && bit < LIMBS * BITS; i--, bit += 8) {
+            long b = bytes[i] & 0xFF;
+            int limb = bit / BITS;
+            int shift = bit % BITS;
+            l[limb] |= (b << shift) & MASK;
+            if (shift > BITS - 8 && limb + 1 < LIMBS) {
+                l[limb + 1] |= b >>> (BITS - shift);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Set this element to a small non-negative value
+     * @param v the value, below 2^29
+     * @return this element
+     */
+    FieldElement set(int v) {
+        Arrays.fill(l, 0);
+        l[0] = v;
+        return this;
+    }
+
+    /**
+     * Copy another element into this one
+     * @param a the element to copy
+     * @return this element
+     */
+    FieldElement set(FieldElement a) {
+        System.arraycopy(a.l, 0, l, 0, LIMBS);
+        return this;
+    }
+
+    /**
+     * Load this element from limbs stored in a table
+     * @param table the table
+     * @param offset index of the first limb
+     * @return this element
+     */
+    FieldElement load(long[] table, int offset) {
+        System.arraycopy(table, offset, l, 0, LIMBS);
+        return this;
+    }
+
+    /**
+     * Load this element from limbs stored in a table outside the heap, such as a
+     * mapped table file (see TableFile)
+     * @param table the table
+     * @param offset index of the first limb
+     * @return this element
+     */
+    FieldElement load(LongBuffer table, int offset) {
+        for (int i = 0; i < LIMBS; i++) {
+            l[i] = table.get(offset + i);
+        }
+        return this;
+    }
+
+    /**
+     * Store the normalized limbs of this element in a table, LIMBS longs
+     * @param table the table
+     * @param offset index of the first limb
+     */
+    void store(long[] table, int offset) {
+        System.arraycopy(l, 0, table, offset, LIMBS);
+        normalize(table, offset);
+    }
+
+    /**
+     * Convert to a BigInteger in [0, p)
+     * @return the value of this element
+     */
+    BigInteger toBigInteger() {
+        byte[] bytes = new byte[BYTES];
+        toBytes(bytes, 0);
+        return new BigInteger(1, bytes);
+    }
+
+    /**
+     * Write the value in [0, p) as BYTES big-endian bytes
+     * @param out the buffer
+     * @param off offset of the first (most significant) byte
+     */
+    void toBytes(byte[] out, int off) {
+        long[] n = l.clone();
+        normalize(n, 0);
+        //Pack the limbs from the least significant end, 8 bits at a time
+        long acc = 0;
+        int bits = 0;
+        int pos = off + BYTES - 1;
+        for (int i = 0; i < LIMBS; i++) {
+            acc |= n[i] << bits;
+            bits += BITS;
+            while (bits >= 8) {
+                out[pos--] = (byte) acc;
+                acc >>>= 8;
+                bits -= 8;
+            }
+        }
+        out[pos] = (byte) acc;
+    }
+
+    /**
+     * Reduce this element to its unique representative in [0, p)
+     * @return this element
+     */
+    FieldElement normalize() {
+        normalize(l, 0);
+        return this;
+    }
+
+    /**
+     * Check whether this element is zero
+     * @return true if the value is 0 mod p
+     */
+    boolean isZero() {
+        long[] n = l.clone();
+        normalize(n, 0);
+        long or = 0;
+        for (long limb : n) {
+            or |= limb;
+        }
+        return or == 0;
+    }
+
+    /**
+     * Parity of the normalized value, the “least significant bit” of a coordinate
+     * @return true if the representative in [0, p) is odd
+     */
+    boolean isOdd() {
+        long[] n = l.clone();
+        normalize(n, 0);
+        return (n[0] & 1) != 0;
+    }
+
+    /**
+     * Compare the values of two elements
+     * @param o the other element
+     * @return true if both are the same value mod p
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof FieldElement)) {
+            return false;
+        }
+        long[] a = l.clone();
+        long[] b = ((FieldElement) o).l.clone();
+        normalize(a, 0);
+        normalize(b, 0);
+        return Arrays.equals(a, b);
+    }
+
+    @Override
+    public int hashCode() {
+        long[] n = l.clone();
+        normalize(n, 0);
+        return Arrays.hashCode(n);
+    }
+
+    /**
+     * Set this element to a + b
+     * @param a the first summand
+     * @param b the second summand
+     * @return this element
+     */
+    FieldElement add(FieldElement a, FieldElement b) {
+        for (int i = 0; i < LIMBS; i++) {
+            l[i] = a.l[i] + b.l[i];
+        }
+        carry(l);
+        return this;
+    }
+
+    /**
+     * Set this element to a - b
+     * @param a the minuend
+     * @param b the subtrahend
+     * @return this element
+     */
+    FieldElement sub(FieldElement a, FieldElement b) {
+        for (int i = 0; i < LIMBS; i++) {
+            l[i] = a.l[i] - b.l[i] + FOUR_P[i];
+        }
+        carry(l);
+        return this;
+    }
+
+    /**
+     * Set this element to -a
+     * @param a the element to negate
+     * @return this element
+     */
+    FieldElement negate(FieldElement a) {
+        for (int i = 0; i < LIMBS; i++) {
+            l[i] = FOUR_P[i] - a.l[i];
+        }
+        carry(l);
+        return this;
+    }
+
+    /**
+     * Set this element to k * a for a small constant k
+     * @param a the element
+     * @param k the constant, 0 &lt;= k &lt; 2^29
+     * @return this element
+     */
+    FieldElement mulSmall(FieldElement a, int k) {
+        for (int i = 0; i < LIMBS; i++) {
+            l[i] = a.l[i] * k;
+        }
+        carry(l);
+        return this;
+    }
+
+    /**
+     * Set this element to a * b
+     * @param a the first factor
+     * @param b the second factor
+     * @return this element
+     */
+    //Schoolbook 18 x 18 limb product. Limbs below 2^29 + 2^8 keep every column
+    //below 2^64 once the high half is folded in, so the column sums are treated
+    //as unsigned and carried with >>>.
+    FieldElement mul(FieldElement a, FieldElement b) {
+        long a0 = a.l[0], a1 = a.l[1], a2 = a.l[2], a3 = a.l[3], a4 = a.l[4], a5 = a.l[5];
+        long a6 = a.l[6], a7 = a.l[7], a8 = a.l[8], a9 = a.l[9], a10 = a.l[10], a11 = a.l[11];
+        long a12 = a.l[12], a13 = a.l[13], a14 = a.l[14], a15 = a.l[15], a16 = a.l[16], a17 = a.l[17];
+        long b0 = b.l[0], b1 = b.l[1], b2 = b.l[2], b3 = b.l[3], b4 = b.l[4], b5 = b.l[5];
+        long b6 = b.l[6], b7 = b.l[7], b8 = b.l[8], b9 = b.l[9], b10 = b.l[10], b11 = b.l[11];
+        long b12 = b.l[12], b13 = b.l[13], b14 = b.l[14], b15 = b.l[15], b16 = b.l[16], b17 = b.l[17];
+
+        //Columns 18..34 carry weight 2^522 * 2^(29(k-18)), which is 2 * 2^(29(k-18)) mod p
+        long c18 = a1 * b17 + a2 * b16 + a3 * b15 + a4 * b14 + a5 * b13 + a6 * b12 + a7 * b11 + a8 * b10
+                + a9 * b9 + a10 * b8 + a11 * b7 + a12 * b6 + a13 * b5 + a14 * b4 + a15 * b3 + a16 * b2
+                + a17 * b1;
+        long c19 = a2 * b17 + a3 * b16 + a4 * b15 + a5 * b14 + a6 * b13 + a7 * b12 + a8 * b11 + a9 * b10
+                + a10 * b9 + a11 * b8 + a12 * b7 + a13 * b6 + a14 * b5 + a15 * b4 + a16 * b3 + a17 * b2;
+        long c20 = a3 * b17 + a4 * b16 + a5 * b15 + a6 * b14 + a7 * b13 + a8 * b12 + a9 * b11 + a10 * b10
+                + a11 * b9 + a12 * b8 + a13 * b7 + a14 * b6 + a15 * b5 + a16 * b4 + a17 * b3;
+        long c21 = a4 * b17 + a5 * b16 + a6 * b15 + a7 * b14 + a8 * b13 + a9 * b12 + a10 * b11 + a11 * b10
+                + a12 * b9 + a13 * b8 + a14 * b7 + a15 * b6 + a16 * b5 + a17 * b4;
+        long c22 = a5 * b17 + a6 * b16 + a7 * b15 + a8 * b14 + a9 * b13 + a10 * b12 + a11 * b11 + a12 * b10
+                + a13 * b9 + a14 * b8 + a15 * b7 + a16 * b6 + a17 * b5;
+        long c23 = a6 * b17 + a7 * b16 + a8 * b15 + a9 * b14 + a10 * b13 + a11 * b12 + a12 * b11 + a13 * b10
+                + a14 * b9 + a15 * b8 + a16 * b7 + a17 * b6;
+        long c24 = a7 * b17 + a8 * b16 + a9 * b15 + a10 * b14 + a11 * b13 + a12 * b12 + a13 * b11 + a14 * b10
+                + a15 * b9 + a16 * b8 + a17 * b7;
+        long c25 = a8 * b17 + a9 * b16 + a10 * b15 + a11 * b14 + a12 * b13 + a13 * b12 + a14 * b11 + a15 * b10
+                + a16 * b9 + a17 * b8;
+        long c26 = a9 * b17 + a10 * b16 + a11 * b15 + a12 * b14 + a13 * b13 + a14 * b12 + a15 * b11
+                + a16 * b10 + a17 * b9;
+        long c27 = a10 * b17 + a11 * b16 + a12 * b15 + a13 * b14 + a14 * b13 + a15 * b12 + a16 * b11
+                + a17 * b10;
+        long c28 = a11 * b17 + a12 * b16 + a13 * b15 + a14 * b14 + a15 * b13 + a16 * b12 + a17 * b11;
+        long c29 = a12 * b17 + a13 * b16 + a14 * b15 + a15 * b14 + a16 * b13 + a17 * b12;
+        long c30 = a13 * b17 + a14 * b16 + a15 * b15 + a16 * b14 + a17 * b13;
+        long c31 = a14 * b17 + a15 * b16 + a16 * b15 + a17 * b14;
+        long c32 = a15 * b17 + a16 * b16 + a17 * b15;
+        long c33 = a16 * b17 + a17 * b16;
+        long c34 = a17 * b17;
+        long r0 = a0 * b0 + (c18 << 1);
+        long r1 = a0 * b1 + a1 * b0 + (c19 << 1);
+        long r2 = a0 * b2 + a1 * b1 + a2 * b0 + (c20 << 1);
+        long r3 = a0 * b3 + a1 * b2 + a2 * b1 + a3 * b0 + (c21 << 1);
+        long r4 = a0 * b4 + a1 * b3 + a2 * b2 + a3 * b1 + a4 * b0 + (c22 << 1);
+        long r5 = a0 * b5 + a1 * b4 + a2 * b3 + a3 * b2 + a4 * b1 + a5 * b0 + (c23 << 1);
+        long r6 = a0 * b6 + a1 * b5 + a2 * b4 + a3 * b3 + a4 * b2 + a5 * b1 + a6 * b0 + (c24 << 1);
+        long r7 = a0 * b7 + a1 * b6 + a2 * b5 + a3 * b4 + a4 * b3 + a5 * b2 + a6 * b1 + a7 * b0 + (c25 << 1);
+        long r8 = a0 * b8 + a1 * b7 + a2 * b6 + a3 * b5 + a4 * b4 + a5 * b3 + a6 * b2 + a7 * b1 + a8 * b0 + (c26 << 1);
+        long r9 = a0 * b9 + a1 * b8 + a2 * b7 + a3 * b6 + a4 * b5 + a5 * b4 + a6 * b3 + a7 * b2 + a8 * b1
+                + a9 * b0 + (c27 << 1);
+        long r10 = a0 * b10 + a1 * b9 + a2 * b8 + a3 * b7 + a4 * b6 + a5 * b5 + a6 * b4 + a7 * b3 + a8 * b2
+                + a9 * b1 + a10 * b0 + (c28 << 1);
+        long r11 = a0 * b11 + a1 * b10 + a2 * b9 + a3 * b8 + a4 * b7 + a5 * b6 + a6 * b5 + a7 * b4 + a8 * b3
+                + a9 * b2 + a10 * b1 + a11 * b0 + (c29 << 1);
+        long r12 = a0 * b12 + a1 * b11 + a2 * b10 + a3 * b9 + a4 * b8 + a5 * b7 + a6 * b6 + a7 * b5 + a8 * b4
+                + a9 * b3 + a10 * b2 + a11 * b1 + a12 * b0 + (c30 << 1);
+        long r13 = a0 * b13 + a1 * b12 + a2 * b11 + a3 * b10 + a4 * b9 + a5 * b8 + a6 * b7 + a7 * b6 + a8 * b5
+                + a9 * b4 + a10 * b3 + a11 * b2 + a12 * b1 + a13 * b0 + (c31 << 1);
+        long r14 = a0 * b14 + a1 * b13 + a2 * b12 + a3 * b11 + a4 * b10 + a5 * b9 + a6 * b8 + a7 * b7
+                + a8 * b6 + a9 * b5 + a10 * b4 + a11 * b3 + a12 * b2 + a13 * b1 + a14 * b0 + (c32 << 1);
+        long r15 = a0 * b15 + a1 * b14 + a2 * b13 + a3 * b12 + a4 * b11 + a5 * b10 + a6 * b9 + a7 * b8
+                + a8 * b7 + a9 * b6 + a10 * b5 + a11 * b4 + a12 * b3 + a13 * b2 + a14 * b1 + a15 * b0 + (c33 << 1);
+        long r16 = a0 * b16 + a1 * b15 + a2 * b14 + a3 * b13 + a4 * b12 + a5 * b11 + a6 * b10 + a7 * b9
+                + a8 * b8 + a9 * b7 + a10 * b6 + a11 * b5 + a12 * b4 + a13 * b3 + a14 * b2 + a15 * b1
+                + a16 * b0 + (c34 << 1);
+        long r17 = a0 * b17 + a1 * b16 + a2 * b15 + a3 * b14 + a4 * b13 + a5 * b12 + a6 * b11 + a7 * b10
+                + a8 * b9 + a9 * b8 + a10 * b7 + a11 * b6 + a12 * b5 + a13 * b4 + a14 * b3 + a15 * b2
+                + a16 * b1 + a17 * b0;
+        reduce(l, r0, r1, r2, r3, r4, r5, r6, r7, r8, r9, r10, r11, r12, r13, r14, r15, r16, r17);
+        return this;
+    }
+
+    /**
+     * Set this element to a^2
+     * @param a the element to square
+     * @return this element
+     */
+    //Same columns as mul, with each cross product computed once and doubled
+    FieldElement square(FieldElement a) {
+        long a0 = a.l[0], a1 = a.l[1], a2 = a.l[2], a3 = a.l[3], a4 = a.l[4], a5 = a.l[5];
+        long a6 = a.l[6], a7 = a.l[7], a8 = a.l[8], a9 = a.l[9], a10 = a.l[10], a11 = a.l[11];
+        long a12 = a.l[12], a13 = a.l[13], a14 = a.l[14], a15 = a.l[15], a16 = a.l[16], a17 = a.l[17];
+        long d0 = a0 << 1, d1 = a1 << 1, d2 = a2 << 1, d3 = a3 << 1, d4 = a4 << 1, d5 = a5 << 1;
+        long d6 = a6 << 1, d7 = a7 << 1, d8 = a8 << 1, d9 = a9 << 1, d10 = a10 << 1, d11 = a11 << 1;
+        long d12 = a12 << 1, d13 = a13 << 1, d14 = a14 << 1, d15 = a15 << 1, d16 = a16 << 1;
+
+        //Cross products a_i * a_j (i < j) appear twice, so one factor is doubled
+        long c18 = d1 * a17 + a2 * d16 + a3 * d15 + a4 * d14 + a5 * d13 + a6 * d12 + a7 * d11 + a8 * d10
+                + a9 * a9;
+        long c19 = d2 * a17 + a3 * d16 + a4 * d15 + a5 * d14 + a6 * d13 + a7 * d12 + a8 * d11 + a9 * d10;
+        long c20 = d3 * a17 + a4 * d16 + a5 * d15 + a6 * d14 + a7 * d13 + a8 * d12 + a9 * d11 + a10 * a10;
+        long c21 = d4 * a17 + a5 * d16 + a6 * d15 + a7 * d14 + a8 * d13 + a9 * d12 + a10 * d11;
+        long c22 = d5 * a17 + a6 * d16 + a7 * d15 + a8 * d14 + a9 * d13 + a10 * d12 + a11 * a11;
+        long c23 = d6 * a17 + a7 * d16 + a8 * d15 + a9 * d14 + a10 * d13 + a11 * d12;
+        long c24 = d7 * a17 + a8 * d16 + a9 * d15 + a10 * d14 + a11 * d13 + a12 * a12;
+        long c25 = d8 * a17 + a9 * d16 + a10 * d15 + a11 * d14 + a12 * d13;
+        long c26 = d9 * a17 + a10 * d16 + a11 * d15 + a12 * d14 + a13 * a13;
+        long c27 = d10 * a17 + a11 * d16 + a12 * d15 + a13 * d14;
+        long c28 = d11 * a17 + a12 * d16 + a13 * d15 + a14 * a14;
+        long c29 = d12 * a17 + a13 * d16 + a14 * d15;
+        long c30 = d13 * a17 + a14 * d16 + a15 * a15;
+        long c31 = d14 * a17 + a15 * d16;
+        long c32 = d15 * a17 + a16 * a16;
+        long c33 = d16 * a17;
+        long c34 = a17 * a17;
+        long r0 = a0 * a0 + (c18 << 1);
+        long r1 = a0 * d1 + (c19 << 1);
+        long r2 = a0 * d2 + a1 * a1 + (c20 << 1);
+        long r3 = a0 * d3 + a1 * d2 + (c21 << 1);
+        long r4 = a0 * d4 + a1 * d3 + a2 * a2 + (c22 << 1);
+        long r5 = a0 * d5 + a1 * d4 + a2 * d3 + (c23 << 1);
+        long r6 = a0 * d6 + a1 * d5 + a2 * d4 + a3 * a3 + (c24 << 1);
+        long r7 = a0 * d7 + a1 * d6 + a2 * d5 + a3 * d4 + (c25 << 1);
+        long r8 = a0 * d8 + a1 * d7 + a2 * d6 + a3 * d5 + a4 * a4 + (c26 << 1);
+        long r9 = a0 * d9 + a1 * d8 + a2 * d7 + a3 * d6 + a4 * d5 + (c27 << 1);
+        long r10 = a0 * d10 + a1 * d9 + a2 * d8 + a3 * d7 + a4 * d6 + a5 * a5 + (c28 << 1);
+        long r11 = a0 * d11 + a1 * d10 + a2 * d9 + a3 * d8 + a4 * d7 + a5 * d6 + (c29 << 1);
+        long r12 = a0 * d12 + a1 * d11 + a2 * d10 + a3 * d9 + a4 * d8 + a5 * d7 + a6 * a6 + (c30 << 1);
+        long r13 = a0 * d13 + a1 * d12 + a2 * d11 + a3 * d10 + a4 * d9 + a5 * d8 + a6 * d7 + (c31 << 1);
+        long r14 = a0 * d14 + a1 * d13 + a2 * d12 + a3 * d11 + a4 * d10 + a5 * d9 + a6 * d8 + a7 * a7 + (c32 << 1);
+        long r15 = a0 * d15 + a1 * d14 + a2 * d13 + a3 * d12 + a4 * d11 + a5 * d10 + a6 * d9 + a7 * d8 + (c33 << 1);
+        long r16 = a0 * d16 + a1 * d15 + a2 * d14 + a3 * d13 + a4 * d12 + a5 * d11 + a6 * d10 + a7 * d9
+                + a8 * a8 + (c34 << 1);
+        long r17 = d0 * a17 + a1 * d16 + a2 * d15 + a3 * d14 + a4 * d13 + a5 * d12 + a6 * d11 + a7 * d10
+                + a8 * d9;
+        reduce(l, r0, r1, r2, r3, r4, r5, r6, r7, r8, r9, r10, r11, r12, r13, r14, r15, r16, r17);
+        return this;
+    }
+
+    /**
+     * Set this element to a^(2^n), squaring n times
+     * @param a the element
+     * @param n the number of squarings
+     * @return this element
+     */
+    FieldElement squareTimes(FieldElement a, int n) {
+        set(a);
+        for (int i = 0; i < n; i++) {
+            square(this);
+        }
+        return this;
+    }
+
+    /**
+     * Set this element to 1/a, computed as a^(p - 2) by Fermat's little theorem
+     * (0 maps to 0). This element must not be a, t1 or t2.
+     * @param a the element to invert
+     * @param t1 scratch element
+     * @param t2 scratch element
+     * @return this element
+     */
+    //p - 2 = 2^521 - 3 is 519 one bits followed by 01, so a^(p - 2) = a^(2^519 - 1)^4 * a
+    FieldElement invert(FieldElement a, FieldElement t1, FieldElement t2) {
+        pow519(a, t1, t2);
+        squareTimes(this, 2).mul(this, a);
+        return this;
+    }
+
+    /**
+     * Set this element to a^(2^519 - 1), the common part of inversion and square
+     * roots. This element must not be a, t1 or t2.
+     * @param a the base
+     * @param t1 scratch element
+     * @param t2 scratch element
+     * @return this element
+     */
+    //Writing a_k = a^(2^k - 1), a_(j+k) = a_j^(2^k) * a_k builds a_519 in
+    //12 multiplications and 522 squarings
+    private FieldElement pow519(FieldElement a, FieldElement t1, FieldElement t2) {
+        t1.square(a).mul(t1, a);                  //a_2
+        square(t1).mul(this, a);                  //a_3
+        t2.squareTimes(t1, 2).mul(t2, t1);        //a_4
+        t1.squareTimes(t2, 3).mul(t1, this);      //a_7
+        squareTimes(t2, 4).mul(this, t2);         //a_8
+        //t1 holds a_7 until the end
+        for (int k = 8; k < 512; k <<= 1) {
+            t2.set(this);
+            squareTimes(this, k).mul(this, t2);   //a_(2k)
+        }
+        squareTimes(this, 7).mul(this, t1);       //a_519
+        return this;
+    }
+
+    /**
+     * Replace every element of an array with its inverse using Montgomery's
+     * trick: one inversion and three multiplications per element
+     * @param a the elements, none of which may be zero
+     */
+    static void invertAll(FieldElement[] a) {
+        if (a.length == 0) {
+            return;
+        }
+        //prefix[i] = a[0] * ... * a[i]
+        FieldElement[] prefix = new FieldElement[a.length];
+        prefix[0] = new FieldElement(a[0]);
+        for (int i = 1; i < a.length; i++) {
+            prefix[i] = new FieldElement().mul(prefix[i - 1], a[i]);
+        }
+        FieldElement inverse = new FieldElement().invert(prefix[a.length - 1], new FieldElement(), new FieldElement());
+        FieldElement t = new FieldElement();
+        for (int i = a.length - 1; i > 0; i--) {
+            //inverse = 1 / (a[0] * ... * a[i]), so inverse * prefix[i - 1] = 1 / a[i]
+            t.mul(inverse, prefix[i - 1]);
+            inverse.mul(inverse, a[i]);
+            a[i].set(t);
+        }
+        a[0].set(inverse);
+    }
+
+    /**
+     * Set this element to a square root of v with the given parity, if one exists
+     * @param v the radicand
+     * @param lsb desired least significant bit (true: 1, false: 0)
+     * @param check scratch element, must not be this or v
+     * @return true if v is a square, false if it is not (this element is then undefined)
+     */
+    //p = 3 (mod 4), so v^((p + 1)/4) = v^(2^519) is a root whenever one exists
+    boolean sqrt(FieldElement v, boolean lsb, FieldElement check) {
+        squareTimes(v, 519);
+        if (isOdd() != lsb) {
+            negate(this); //correct the lsb
+        }
+        return check.square(this).sub(check, v).isZero();
+    }
+
+    /**
+     * Set this element to a square root of u / v with the given parity, if one
+     * exists, with a single exponentiation and no inversion. This element must
+     * not be u, v, t1, t2 or t3.
+     * @param u the numerator
+     * @param v the denominator, nonzero
+     * @param lsb desired least significant bit (true: 1, false: 0)
+     * @param t1 scratch element
+     * @param t2 scratch element
+     * @param t3 scratch element
+     * @return true if u / v is a square, false if it is not (this element is then undefined)
+     */
+    //For p = 3 (mod 4), r = u (uv)^((p - 3)/4) gives r^2 v = u (uv)^((p - 1)/2), which
+    //is u exactly when u / v is a square, and (p - 3)/4 = 2^519 - 1 is pow519's chain
+    boolean sqrtRatio(FieldElement u, FieldElement v, boolean lsb, FieldElement t1, FieldElement t2,
+                      FieldElement t3) {
+        t3.mul(u, v);
+        pow519(t3, t1, t2).mul(this, u);
+        if (isOdd() != lsb) {
+            negate(this); //correct the lsb
+        }
+        return t1.square(this).mul(t1, v).sub(t1, u).isZero();
+    }
+
+    /**
+     * Carry loose limbs (each below 2^63) into 29-bit limbs, folding the bits
+     * past 2^522 back into the bottom limb since 2^522 = 2 (mod p)
+     * @param n the limbs to carry
+     */
+    private static void carry(long[] n) {
+        long c = 0;
+        for (int i = 0; i < LIMBS; i++) {
+            long v = n[i] + c;
+            n[i] = v & MASK;
+            c = v >>> BITS;
+        }
+        n[0] += c << 1;
+        n[1] += n[0] >>> BITS;
+        n[0] &= MASK;
+    }
+
+    /**
+     * Carry the unsigned column sums of a product into 29-bit limbs and fold the
+     * top carry, leaving every limb below 2^29 + 2^8
+     * @param n the limbs receiving the result
+     */
+    private static void reduce(long[] n, long r0, long r1, long r2, long r3, long r4, long r5, long r6, long r7,
+                               long r8, long r9, long r10, long r11, long r12, long r13, long r14, long r15,
+                               long r16, long r17) {
+        r1 += r0 >>> BITS;
+        r2 += r1 >>> BITS;
+        r3 += r2 >>> BITS;
+        r4 += r3 >>> BITS;
+        r5 += r4 >>> BITS;
+        r6 += r5 >>> BITS;
+        r7 += r6 >>> BITS;
+        r8 += r7 >>> BITS;
+        r9 += r8 >>> BITS;
+        r10 += r9 >>> BITS;
+        r11 += r10 >>> BITS;
+        r12 += r11 >>> BITS;
+        r13 += r12 >>> BITS;
+        r14 += r13 >>> BITS;
+        r15 += r14 >>> BITS;
+        r16 += r15 >>> BITS;
+        r17 += r16 >>> BITS;
+        //The carry out of the top limb has weight 2^522 = 2 (mod p)
+        long low = (r0 & MASK) + ((r17 >>> BITS) << 1);
+        n[0] = low & MASK;
+        n[1] = (r1 & MASK) + (low >>> BITS);
+        n[2] = r2 & MASK;
+        n[3] = r3 & MASK;
+        n[4] = r4 & MASK;
+        n[5] = r5 & MASK;
+        n[6] = r6 & MASK;
+        n[7] = r7 & MASK;
+        n[8] = r8 & MASK;
+        n[9] = r9 & MASK;
+        n[10] = r10 & MASK;
+        n[11] = r11 & MASK;
+        n[12] = r12 & MASK;
+        n[13] = r13 & MASK;
+        n[14] = r14 & MASK;
+        n[15] = r15 & MASK;
+        n[16] = r16 & MASK;
+        n[17] = r17 & MASK;
+    }
+
+    /**
+     * Reduce limbs to the unique representative in [0, p), with every limb
+     * strictly 29 bits and the top limb 28 bits
+     * @param n the limbs to reduce
+     * @param off index of the lowest limb
+     */
+    private static void normalize(long[] n, int off) {
+        int top = off + LIMBS - 1;
+        //Two passes: the first leaves at most a tiny value past 2^521, the second clears it
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = off; i < top; i++) {
+                n[i + 1] += n[i] >>> BITS;
+                n[i] &= MASK;
+            }
+            //2^521 = 1 (mod p)
+            long carry = n[top] >>> TOP_BITS;
+            n[top] &= TOP_MASK;
+            n[off] += carry;
+        }
+        //The value is now below 2^521, so it is p exactly when every bit is set
+        boolean isP = n[top] == TOP_MASK;
+        for (int i = off; i < top && isP; i++) {
+            isP = n[i] == MASK;
+        }
+        if (isP) {
+            Arrays.fill(n, off, off + LIMBS, 0);
+        }
+    }
+}
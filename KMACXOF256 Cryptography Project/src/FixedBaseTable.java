@@ -0,0 +1,191 @@
+import java.math.BigInteger;
+import java.nio.LongBuffer;
+
+/**
+ * Precomputed multiples of a fixed base point for scalar multiplication
+ * without doublings. The scalar, reduced mod r, is recoded into signed
+ * radix-2^6 digits e_i in [-31, 32], so k * B = sum of e_i * 2^(6i) * B, and
+ * the table holds j * 2^(6i) * B for j = 1..32 in every digit position i.
+ * A multiplication is then one table addition per nonzero digit, at most 87
+ * mixed additions against the ~780 doublings and additions of double-and-add.
+ * <p>
+ * Entries are affine, stored as the limbs of x, y and -d * x * y in one flat
+ * buffer so a lookup is a copy and an addition costs 8 multiplications. The
+ * buffer is either built on the heap or mapped from a table file (see
+ * TableFile), so a process can start from a table saved by an earlier one.
+ * The table for the generator G is loaded or built on first use and shared
+ * by the whole process; a table is read-only once built, so it is thread-safe.
+ * Odd multiples of B are kept as well, for simultaneous multiplications
+ * that share their doublings with another point (EllipticPoint.scaleG).
+ * @author Ethan Nesel
+ */
+class FixedBaseTable {
+    /**
+     * Bits per signed digit
+     */
+    static final int WINDOW = 6;
+    /**
+     * Largest digit magnitude, and multiples stored per digit position
+     */
+    private static final int HALF = 1 << (WINDOW - 1);
+    /**
+     * Digit positions covering a scalar below r. The top window holds only
+     * 3 bits, so the recoding never carries past it.
+     */
+    static final int DIGITS = (EllipticPoint.r.bitLength() + WINDOW - 1) / WINDOW;
+    /**
+     * Longs per entry: x, y and -d * x * y
+     */
+    static final int ENTRY = 3 * FieldElement.LIMBS;
+    /**
+     * -d, for the value d = -376014 in the E521 curve equation
+     */
+    private static final int MINUS_D = 376014;
+    /**
+     * Width of the NAF for the odd multiples kept alongside the table, for
+     * simultaneous multiplications such as a * B + b * Q
+     */
+    static final int NAF_WINDOW = 7;
+
+    /**
+     * Number of entries, HALF multiples in each of the DIGITS positions
+     */
+    static final int SIZE = DIGITS * HALF;
+
+    /**
+     * The base point B
+     */
+    final EllipticPoint base;
+    /**
+     * Entry (i, j) for j * 2^(6i) * B starts at (i * HALF + j - 1) * ENTRY
+     */
+    final LongBuffer entries;
+    /**
+     * B, 3B, ..., 63B and their negatives for a width-7 NAF
+     */
+    final OddMultiples odd;
+
+    /**
+     * Holder for the generator's table, loaded or built the first time it is used
+     */
+    private static final class Generator {
+        static final FixedBaseTable TABLE = warmStart(EllipticPoint.G);
+    }
+
+    /**
+     * Get the process-wide table for the generator G
+     * @return the table, loaded or built on first call
+     */
+    static FixedBaseTable generator() {
+        return Generator.TABLE;
+    }
+
+    /**
+     * Get the table of a base point from the table directory, building it and
+     * saving it there if it is missing or unusable
+     * @param base the base point B, of order r
+     * @return the table
+     */
+    static FixedBaseTable warmStart(EllipticPoint base) {
+        FixedBaseTable table = TableFile.load(base);
+        if (table == null) {
+            table = new FixedBaseTable(base);
+            TableFile.save(table);
+        }
+        return table;
+    }
+
+    /**
+     * Build the table of multiples of a base point
+     * @param base the base point B, of order r
+     */
+    FixedBaseTable(EllipticPoint base) {
+        this.base = base;
+        ExtendedPoint[] multiples = new ExtendedPoint[SIZE];
+        ExtendedPoint position = new ExtendedPoint(base);
+        for (int i = 0; i < DIGITS; i++) {
+            //position = 2^(6i) * B, multiple = j * position
+            ExtendedPoint multiple = new ExtendedPoint(position);
+            multiples[i * HALF] = new ExtendedPoint(multiple);
+            for (int j = 2; j <= HALF; j++) {
+                multiple.add(position);
+                multiples[i * HALF + j - 1] = new ExtendedPoint(multiple);
+            }
+            //2^(6(i + 1)) * B = 2 * (32 * 2^(6i) * B)
+            multiple.dbl();
+            position = multiple;
+        }
+        //One inversion for all of them
+        EllipticPoint[] affine = ExtendedPoint.toAffine(multiples);
+        long[] limbs = new long[SIZE * ENTRY];
+        FieldElement u = new FieldElement();
+        for (int e = 0; e < affine.length; e++) {
+            affine[e].x.store(limbs, e * ENTRY);
+            affine[e].y.store(limbs, e * ENTRY + FieldElement.LIMBS);
+            u.mul(affine[e].x, affine[e].y).mulSmall(u, MINUS_D).store(limbs, e * ENTRY + 2 * FieldElement.LIMBS);
+        }
+        entries = LongBuffer.wrap(limbs);
+        odd = new OddMultiples(base, NAF_WINDOW);
+    }
+
+    /**
+     * Wrap a table computed earlier, such as one read from a table file
+     * @param base the base point B
+     * @param entries SIZE * ENTRY limbs, laid out as in a built table
+     * @param odd the odd multiples of B for a width NAF_WINDOW NAF
+     */
+    FixedBaseTable(EllipticPoint base, LongBuffer entries, OddMultiples odd) {
+        this.base = base;
+        this.entries = entries;
+        this.odd = odd;
+    }
+
+    /**
+     * Multiply the base point by a scalar
+     * @param k the scalar, any integer (it is reduced mod r)
+     * @return the point k * B
+     */
+    EllipticPoint multiply(BigInteger k) {
+        ExtendedPoint result = new ExtendedPoint();
+        addTo(result, k);
+        return result.toAffine();
+    }
+
+    /**
+     * Add a multiple of the base point to a point, so that several fixed-base
+     * products can be summed with a single inversion at the end
+     * @param sum the point to add to, replaced with sum + k * B
+     * @param k the scalar, any integer (it is reduced mod r)
+     */
+    void addTo(ExtendedPoint sum, BigInteger k) {
+        int[] digits = recode(k.mod(EllipticPoint.r));
+        for (int i = 0; i < DIGITS; i++) {
+            int digit = digits[i];
+            if (digit != 0) {
+                sum.addAffine(entries, (i * HALF + Math.abs(digit) - 1) * ENTRY, digit < 0);
+            }
+        }
+    }
+
+    /**
+     * Recode a reduced scalar into signed radix-2^6 digits
+     * @param k the scalar, 0 &lt;= k &lt; r
+     * @return DIGITS digits in [-31, 32], least significant first
+     */
+    private static int[] recode(BigInteger k) {
+        int[] digits = new int[DIGITS];
+        int carry = 0;
+        for (int i = 0; i < DIGITS; i++) {
+            int window = carry;
+            for (int b = 0; b < WINDOW; b++) {
+                if (k.testBit(i * WINDOW + b)) {
+                    window += 1 << b;
+                }
+            }
+            //A digit above 32 borrows from the next position: w = (w - 64) + 64
+            carry = window > HALF ? 1 : 0;
+            digits[i] = window - (carry << WINDOW);
+        }
+        return digits;
+    }
+}
@@ -1,5 +1,14 @@
 import javax.swing.*;
+import java.io.EOFException;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
 /**
  * The Functions class holds the supporting functions for implementing
@@ -13,6 +22,14 @@ public class Functions {
      * Hex Value Key
      */
     private static final char[] HEX_ARRAY = "0123456789ABCDEF".toCharArray();
+    /**
+     * Size of the buffer used when streaming files
+     */
+    static final int FILE_BUFFER_SIZE = 1 << 16;
+    /**
+     * Size of each mapped window when hashing a file through a memory map
+     */
+    private static final long MAP_WINDOW_SIZE = 1L << 30;
 
     /**
      * Right encode function
@@ -22,19 +39,40 @@ public class Functions {
      */
     //Utilizing NIST.SP.800-185
     public static byte[] right_encode(int input) {
+        return right_encode((long) input);
+    }
+
+    /**
+     * Right encode function for lengths beyond the int range, such as the
+     * bit length of a message over 256 MB
+     *
+     * @param input the number to be right encoded
+     * @return a byte string or array representing the right encoded input
+     */
+    //Utilizing NIST.SP.800-185
+    public static byte[] right_encode(long input) {
+        byte[] output = new byte[encodedLength(input) + 1];
+        right_encode(input, output, 0);
+        return output;
+    }
+
+    /**
+     * Right encode function writing into a caller-provided buffer
+     *
+     * @param input the number to be right encoded
+     * @param out buffer receiving the encoding, with room for at least 9 bytes
+     * @param off offset of the first output byte in out
+     * @return the number of bytes written
+     */
+    //Utilizing NIST.SP.800-185
+    public static int right_encode(long input, byte[] out, int off) {
         //Validity Conditions: 0 ≤ input < 2^2040
-        int n = 1;
-        while (input >= Math.pow(256, n)) {
-            n = n + 1;
-        }
-        int shifter = (n - 1) * 8;
-        byte[] output = new byte[n + 1];
+        int n = encodedLength(input);
         for (int i = 0; i < n; i++) {
-            output[i] = (byte) ((input >> shifter) & 0xff);
-            shifter = shifter - 8;
+            out[off + i] = (byte) (input >>> ((n - 1 - i) * 8));
         }
-        output[n] = (byte) (n);
-        return output;
+        out[off + n] = (byte) (n);
+        return n + 1;
     }
 
     /**
@@ -45,20 +83,54 @@ public class Functions {
      */
     //Utilizing NIST.SP.800-185
     public static byte[] left_encode(int input) {
+        return left_encode((long) input);
+    }
+
+    /**
+     * Left encode function for lengths beyond the int range, such as the
+     * bit length of a string over 256 MB
+     *
+     * @param input the number to be left encoded
+     * @return a byte string or array representing the left encoded input
+     */
+    //Utilizing NIST.SP.800-185
+    public static byte[] left_encode(long input) {
+        byte[] output = new byte[encodedLength(input) + 1];
+        left_encode(input, output, 0);
+        return output;
+    }
+
+    /**
+     * Left encode function writing into a caller-provided buffer
+     *
+     * @param input the number to be left encoded
+     * @param out buffer receiving the encoding, with room for at least 9 bytes
+     * @param off offset of the first output byte in out
+     * @return the number of bytes written
+     */
+    //Utilizing NIST.SP.800-185
+    public static int left_encode(long input, byte[] out, int off) {
         //Validity Conditions: 0 ≤ input < 2^2040;
-        int n = 1;
-        while (input >= Math.pow(256, n)) {
-            n = n + 1;
+        int n = encodedLength(input);
+        out[off] = (byte) (n);
+        for (int i = 1; i <= n; i++) {
+            out[off + i] = (byte) (input >>> ((n - i) * 8));
         }
-        int shifter = (n - 1) * 8;
-        byte[] output = new byte[n + 1];
-        output[0] = (byte) (n);
+        return n + 1;
+    }
 
-        for (int i = 1; i <= n; i++) {
-            output[i] = (byte) ((input >> shifter) & 0xff);
-            shifter = shifter - 8;
+    /**
+     * Number of bytes n in the big-endian encoding of a value, the smallest
+     * n ≥ 1 with input < 256^n, found from the bit length rather than by comparing powers
+     *
+     * @param input the number to be encoded
+     * @return n
+     */
+    private static int encodedLength(long input) {
+        if (input < 0) {
+            throw new IllegalArgumentException("Cannot encode a negative length: " + input);
         }
-        return output;
+        return Math.max(1, (Long.SIZE - Long.numberOfLeadingZeros(input) + 7) / 8);
     }
 
     /**
@@ -72,18 +144,31 @@ public class Functions {
     //Directly implemented from course slides, KMACXOF256.pdf slide 8 in canvas.
     public static byte[] bytepad(byte[] X, int w) {
         assert w > 0;
-        byte[] encodedW = left_encode(w);
-        byte[] z = new byte[w * ((encodedW.length + X.length + w - 1) / w)];
-        System.arraycopy(encodedW, 0, z, 0, encodedW.length);
-        System.arraycopy(X, 0, z, encodedW.length, X.length);
-
-        for (int i = encodedW.length + X.length; i < z.length; i++) {
-            z[i] = (byte) (0);
-        }
-
+        byte[] z = new byte[w * ((encodedLength(w) + 1 + X.length + w - 1) / w)];
+        bytepad(X, 0, X.length, w, z, 0);
         return z;
     }
 
+    /**
+     * bytepad writing into a caller-provided buffer
+     *
+     * @param X the input string
+     * @param xOff offset of the first byte of X
+     * @param xLen number of bytes of X
+     * @param w the integer we will encode and prepend to X
+     * @param out buffer receiving the padded string, a multiple of w bytes
+     * @param off offset of the first output byte in out
+     * @return the number of bytes written
+     */
+    public static int bytepad(byte[] X, int xOff, int xLen, int w, byte[] out, int off) {
+        assert w > 0;
+        int n = left_encode(w, out, off);
+        System.arraycopy(X, xOff, out, off + n, xLen);
+        int padded = w * ((n + xLen + w - 1) / w);
+        Arrays.fill(out, off + n + xLen, off + padded, (byte) 0);
+        return padded;
+    }
+
     /**
      * The encode_string function is used to encode bit strings in a way that may be parsed
      * unambiguously from the beginning of the string, S.
@@ -94,19 +179,31 @@ public class Functions {
     /*Utilizing NIST.SP.800-185
      (with inspiration from the same function shown in office hours) */
     public static byte[] encode_string(byte[] S) {
+        int lengthHolder = S == null ? 0 : S.length;
+        byte[] output = new byte[encodedLength(lengthHolder * 8L) + 1 + lengthHolder];
+        encode_string(S, output, 0);
+        return output;
+    }
+
+    /**
+     * encode_string writing into a caller-provided buffer
+     *
+     * @param S the string to encode
+     * @param out buffer receiving the encoded string
+     * @param off offset of the first output byte in out
+     * @return the number of bytes written
+     */
+    public static int encode_string(byte[] S, byte[] out, int off) {
         //Validity Conditions: 0 ≤ len(S) < 2^2040
         int lengthHolder = 0;
         if (S != null) {
             lengthHolder = S.length;
         }
-        byte[] encodedS = left_encode(lengthHolder * 8);
-        byte[] output = new byte[encodedS.length + lengthHolder];
-
-        System.arraycopy(encodedS, 0, output, 0, encodedS.length);
+        int n = left_encode(lengthHolder * 8L, out, off);
         if (S != null) {
-            System.arraycopy(S,0,output,encodedS.length,lengthHolder);
+            System.arraycopy(S, 0, out, off + n, lengthHolder);
         }
-        return output;
+        return n + lengthHolder;
     }
 
     /**
@@ -188,4 +285,68 @@ public class Functions {
         }
         return selected;
     }
+
+    /**
+     * Feed the full contents of a file into a KMACXOF256 computation,
+     * reading it in fixed-size pieces so memory use does not grow with the file
+     * @param mac the KMACXOF256 computation to update
+     * @param file the file to absorb
+     * @throws IOException if the file cannot be read
+     */
+    public static void absorbFile(KMACXOF256Stream mac, File file) throws IOException {
+        byte[] buffer = new byte[FILE_BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                mac.update(buffer, 0, read);
+            }
+        }
+    }
+
+    /**
+     * Feed the full contents of a file into a KMACXOF256 computation straight
+     * from memory-mapped windows of the file, without copying it onto the heap.
+     * Files over 2 GB are covered by mapping one window after another.
+     * @param mac the KMACXOF256 computation to update
+     * @param file the file to absorb
+     * @throws IOException if the file cannot be mapped
+     */
+    public static void absorbMappedFile(KMACXOF256Stream mac, File file) throws IOException {
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = in.size();
+            for (long position = 0; position < size; position += MAP_WINDOW_SIZE) {
+                long length = Math.min(MAP_WINDOW_SIZE, size - position);
+                mac.update(in.map(FileChannel.MapMode.READ_ONLY, position, length));
+            }
+        }
+    }
+
+    /**
+     * Write the whole remaining content of a buffer to a channel
+     * @param out the channel to write to
+     * @param buf the bytes to write, from its position to its limit
+     * @throws IOException if the write fails
+     */
+    public static void writeFully(WritableByteChannel out, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+    }
+
+    /**
+     * Read exactly dst.length bytes from a file channel at a given position
+     * @param in the channel to read from
+     * @param dst buffer to fill
+     * @param position file position of the first byte
+     * @throws IOException if the read fails or the file ends first
+     */
+    public static void readFully(FileChannel in, byte[] dst, long position) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(dst);
+        while (buf.hasRemaining()) {
+            int read = in.read(buf, position + buf.position());
+            if (read < 0) {
+                throw new EOFException("Unexpected end of file");
+            }
+        }
+    }
 }
@@ -0,0 +1,164 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Table-driven hex codec for the legacy text cryptograms, with a writer that
+ * encodes while it writes and a reader that decodes a range of a file in
+ * fixed blocks. Either side only ever holds one block of memory, whatever
+ * the size of the ciphertext.
+ * @author Ethan Nesel
+ */
+public class HexCodec {
+    /**
+     * Upper case hex digit pair for every byte value, 2 * b and 2 * b + 1
+     */
+    private static final byte[] ENCODE = new byte[512];
+    /**
+     * Value of every ASCII hex digit (either case), -1 for anything else
+     */
+    private static final byte[] DECODE = new byte[256];
+
+    static {
+        byte[] digits = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+        for (int b = 0; b < 256; b++) {
+            ENCODE[2 * b] = digits[b >>> 4];
+            ENCODE[2 * b + 1] = digits[b & 0x0F];
+        }
+        Arrays.fill(DECODE, (byte) -1);
+        for (int v = 0; v < 16; v++) {
+            DECODE[digits[v]] = (byte) v;
+            DECODE[Character.toLowerCase(digits[v])] = (byte) v;
+        }
+    }
+
+    /**
+     * Hex encode part of a byte array into ASCII characters
+     * @param bytes the bytes to encode
+     * @param off offset of the first byte to encode
+     * @param len number of bytes to encode
+     * @param hex buffer receiving 2 * len hex characters
+     * @param hexOff offset of the first hex character in hex
+     */
+    public static void encode(byte[] bytes, int off, int len, byte[] hex, int hexOff) {
+        for (int j = 0; j < len; j++) {
+            int v = (bytes[off + j] & 0xFF) << 1;
+            hex[hexOff++] = ENCODE[v];
+            hex[hexOff++] = ENCODE[v + 1];
+        }
+    }
+
+    /**
+     * Decode ASCII hex characters into bytes
+     * @param hex the hex characters
+     * @param hexOff offset of the first hex character
+     * @param len number of bytes to produce (2 * len characters are read)
+     * @param out buffer receiving the bytes
+     * @param outOff offset of the first output byte in out
+     * @throws IllegalArgumentException if a character is not a hex digit
+     */
+    public static void decode(byte[] hex, int hexOff, int len, byte[] out, int outOff) {
+        for (int i = 0; i < len; i++) {
+            int hi = DECODE[hex[hexOff++] & 0xFF];
+            int lo = DECODE[hex[hexOff++] & 0xFF];
+            //Both nibbles are -1 for a bad digit, so one test covers either
+            if ((hi | lo) < 0) {
+                throw new IllegalArgumentException("Invalid hex digit");
+            }
+            out[outOff + i] = (byte) (hi << 4 | lo);
+        }
+    }
+
+    /**
+     * Writes bytes to a channel as hex, one block at a time
+     */
+    static final class Writer {
+        private final WritableByteChannel out;
+        private final byte[] hex;
+
+        /**
+         * @param out the channel to write hex characters to
+         * @param blockSize largest number of bytes encoded per write
+         */
+        Writer(WritableByteChannel out, int blockSize) {
+            this.out = out;
+            this.hex = new byte[2 * blockSize];
+        }
+
+        /**
+         * Encode and write bytes
+         * @param bytes the bytes to write
+         * @param off offset of the first byte
+         * @param len number of bytes
+         * @throws IOException if the write fails
+         */
+        void write(byte[] bytes, int off, int len) throws IOException {
+            while (len > 0) {
+                int block = Math.min(len, hex.length / 2);
+                encode(bytes, off, block, hex, 0);
+                Functions.writeFully(out, ByteBuffer.wrap(hex, 0, 2 * block));
+                off += block;
+                len -= block;
+            }
+        }
+    }
+
+    /**
+     * Reads and decodes a range of hex characters from a file, one block at a time
+     */
+    static final class Reader {
+        private final FileChannel in;
+        private final ByteBuffer hex;
+        private final long end;
+        private long position;
+
+        /**
+         * @param in the file to read
+         * @param start position of the first hex character
+         * @param end position just past the last hex character
+         * @param blockSize largest number of bytes decoded per read
+         * @throws IOException if the range holds an odd number of characters
+         */
+        Reader(FileChannel in, long start, long end, int blockSize) throws IOException {
+            if (((end - start) & 1) != 0) {
+                throw new IOException("Odd number of hex digits");
+            }
+            this.in = in;
+            this.hex = ByteBuffer.allocate(2 * blockSize);
+            this.position = start;
+            this.end = end;
+        }
+
+        /**
+         * Decode the next block of bytes
+         * @param dst buffer receiving the bytes
+         * @param off offset of the first byte in dst
+         * @param len largest number of bytes to decode
+         * @return number of bytes decoded, or -1 at the end of the range
+         * @throws IOException if the file cannot be read or holds a character that is not a hex digit
+         */
+        int read(byte[] dst, int off, int len) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            hex.clear().limit((int) Math.min(Math.min(hex.capacity(), 2L * len), end - position));
+            while (hex.hasRemaining()) {
+                if (in.read(hex, position + hex.position()) < 0) {
+                    throw new EOFException("Unexpected end of cryptogram");
+                }
+            }
+            int read = hex.position() / 2;
+            try {
+                decode(hex.array(), 0, read, dst, off);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Corrupt hex in cryptogram", e);
+            }
+            position += hex.position();
+            return read;
+        }
+    }
+}
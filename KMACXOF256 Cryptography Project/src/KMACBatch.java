@@ -0,0 +1,89 @@
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Batch KMACXOF256 over many (key, message) pairs under one customization
+ * string. Each distinct key is absorbed once for the whole batch, and the
+ * tags are computed on the common ForkJoinPool. Every tag is identical to
+ * KMACXOF256.KMACXOF256(K, X, L, S) for the same inputs.
+ * @author Ethan Nesel
+ */
+public class KMACBatch {
+    /**
+     * Pairs below which a task stops splitting and works sequentially
+     */
+    private static final int SEQUENTIAL_PAIRS = 64;
+
+    /**
+     * Compute KMACXOF256 for every (keys[i], messages[i]) pair
+     * @param keys the key bit strings
+     * @param messages the main input bit strings, one per key
+     * @param L the output length in bits
+     * @param S an optional customization bit string, shared by the whole batch
+     * @return the MAC tags, in the same order as the inputs
+     */
+    public static byte[][] tags(byte[][] keys, byte[][] messages, int L, byte[] S) {
+        if (keys.length != messages.length) {
+            throw new IllegalArgumentException("Need exactly one message per key");
+        }
+        //States after bytepad(encode_string(K), 136), shared by every pair with the same key
+        Map<ByteBuffer, CSHAKE256Stream> distinct = new HashMap<>();
+        CSHAKE256Stream[] prefixes = new CSHAKE256Stream[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            ByteBuffer key = ByteBuffer.wrap(keys[i]);
+            prefixes[i] = distinct.get(key);
+            if (prefixes[i] == null) {
+                //Not cached beyond the batch: the keys may well be secrets used once
+                prefixes[i] = SpongeStateCache.kmac(keys[i], S, false);
+                distinct.put(key, prefixes[i]);
+            }
+        }
+
+        byte[][] tags = new byte[keys.length][];
+        ForkJoinPool.commonPool().invoke(new PairTask(prefixes, messages, L, tags, 0, keys.length));
+        return tags;
+    }
+
+    /**
+     * Task computing the tags for a run of pairs, splitting the run in half
+     * until it is small enough to work through sequentially
+     */
+    private static final class PairTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final CSHAKE256Stream[] prefixes;
+        private final byte[][] messages;
+        private final int L;
+        private final byte[][] tags;
+        private final int from;
+        private final int to;
+
+        PairTask(CSHAKE256Stream[] prefixes, byte[][] messages, int L, byte[][] tags, int from, int to) {
+            this.prefixes = prefixes;
+            this.messages = messages;
+            this.L = L;
+            this.tags = tags;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SEQUENTIAL_PAIRS) {
+                for (int i = from; i < to; i++) {
+                    //newX = bytepad(encode_string(K), 136) || X || right_encode(0), continuing from the shared prefix
+                    CSHAKE256Stream kmac = prefixes[i].copy();
+                    kmac.update(messages[i]);
+                    kmac.update(KMACXOF256Stream.ARBITRARY_LENGTH);
+                    tags[i] = kmac.finish(L);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new PairTask(prefixes, messages, L, tags, from, middle),
+                    new PairTask(prefixes, messages, L, tags, middle, to));
+        }
+    }
+}
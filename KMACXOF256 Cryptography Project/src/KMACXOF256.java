@@ -1,18 +1,15 @@
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * KMACXOF256 Implementation
  * @author Ethan Nesel
  */
 public class KMACXOF256 {
-    /**
-     * Invoke CSHAKE256
-     */
-    private final CSHAKE256 cshake256 = new CSHAKE256();
     /**
      * "KMAC" string used within the implementation
      */
-    private static final String KMACString = "KMAC";
+    static final String KMACString = "KMAC";
 
     /**
      * Compute KMACXOF256
@@ -25,9 +22,29 @@ public class KMACXOF256 {
     //Based on NIST pseudocode steps
     public byte[] KMACXOF256(byte[] K, byte[] X,  int L, byte[] S) {
         //Validity Conditions: len(K) <2^2040 and 0 ≤ L and len(S) < 2^2040
-        byte[] newXpart1 = Functions.bytepad(Functions.encode_string(K), 136);
-        byte[] newXpart2 = Functions.concat(newXpart1, X);
-        byte[] newX = Functions.concat(newXpart2, Functions.right_encode(0));
-        return cshake256.cSHAKE256(newX, L, KMACString.getBytes(StandardCharsets.UTF_8), S);
+        //newX = bytepad(encode_string(K), 136) || X || right_encode(0), absorbed piece by piece
+        //starting from the cached state after the (“KMAC”, S) prefix; K itself is never cached
+        KMACXOF256Stream kmac = new KMACXOF256Stream(K, S);
+        kmac.update(X);
+        return kmac.finish(L);
+    }
+
+    /**
+     * Compute KMACXOF256 with output of any length, written to a channel as it is squeezed
+     * @param K a key bit string
+     * @param X the main input bit string
+     * @param L the output length in bits, a multiple of 8
+     * @param S an optional customization bit string
+     * @param out the channel receiving the output
+     * @throws IOException if the write fails
+     */
+    public void KMACXOF256(byte[] K, byte[] X, long L, byte[] S, WritableByteChannel out) throws IOException {
+        //Validity Conditions: len(K) <2^2040 and 0 ≤ L and len(S) < 2^2040
+        if (L < 0 || L % 8 != 0) {
+            throw new IllegalArgumentException("Output length must be a non-negative multiple of 8 bits");
+        }
+        KMACXOF256Stream kmac = new KMACXOF256Stream(K, S);
+        kmac.update(X);
+        kmac.squeeze(out, L / 8);
     }
 }
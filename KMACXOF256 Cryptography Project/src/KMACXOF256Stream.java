@@ -0,0 +1,191 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Incremental KMACXOF256: construct with the key and customization, feed the
+ * message in any number of pieces, then squeeze as much output as needed.
+ * Produces the same bytes as KMACXOF256.KMACXOF256 on the concatenated message.
+ * @author Ethan Nesel
+ */
+public class KMACXOF256Stream {
+    /**
+     * right_encode(0), the suffix selecting arbitrary-length output; only ever read
+     */
+    static final byte[] ARBITRARY_LENGTH = Functions.right_encode(0);
+    /**
+     * cSHAKE256 under the function name "KMAC"
+     */
+    private final CSHAKE256Stream cshake;
+    /**
+     * Set once right_encode(0) has been absorbed
+     */
+    private boolean finished;
+
+    /**
+     * Start a KMACXOF256 computation
+     * @param K a key bit string
+     * @param S an optional customization bit string
+     */
+    //Based on NIST pseudocode steps, newX = bytepad(encode_string(K), 136) || X || right_encode(0)
+    public KMACXOF256Stream(byte[] K, byte[] S) {
+        this(K, S, false);
+    }
+
+    /**
+     * Start a KMACXOF256 computation
+     * @param K a key bit string
+     * @param S an optional customization bit string
+     * @param cacheKey true to keep the state after K in the SpongeStateCache
+     */
+    private KMACXOF256Stream(byte[] K, byte[] S, boolean cacheKey) {
+        //Validity Conditions: len(K) <2^2040 and len(S) < 2^2040
+        //The (“KMAC”, S) prefix always comes from the cache; the key only when asked
+        cshake = SpongeStateCache.kmac(K, S, cacheKey);
+    }
+
+    /**
+     * Start a KMACXOF256 computation under a key that is used again and again,
+     * such as a service's tag key, caching the state after the key so that later
+     * computations under it skip absorbing it. The key stays in the heap while it
+     * is cached: never use this for one-time or derived secrets.
+     * @param K a key bit string
+     * @param S an optional customization bit string
+     * @return the computation
+     */
+    public static KMACXOF256Stream cached(byte[] K, byte[] S) {
+        return new KMACXOF256Stream(K, S, true);
+    }
+
+    /**
+     * Snapshot of another computation
+     * @param other the computation to copy
+     */
+    private KMACXOF256Stream(KMACXOF256Stream other) {
+        cshake = other.cshake.copy();
+        finished = other.finished;
+    }
+
+    /**
+     * Clone the current sponge state, so that a common message prefix can be
+     * continued with different suffixes without absorbing it again
+     * @return an independent copy of this computation
+     */
+    public KMACXOF256Stream copy() {
+        return new KMACXOF256Stream(this);
+    }
+
+    /**
+     * Absorb part of the message
+     * @param X the message bytes
+     * @param off offset of the first byte to absorb
+     * @param len number of bytes to absorb
+     */
+    public void update(byte[] X, int off, int len) {
+        cshake.update(X, off, len);
+    }
+
+    /**
+     * Absorb part of the message
+     * @param X the message bytes
+     */
+    public void update(byte[] X) {
+        cshake.update(X, 0, X.length);
+    }
+
+    /**
+     * Absorb the remaining bytes of a buffer, such as a mapped region of a file
+     * @param X the message bytes, from its position to its limit
+     */
+    public void update(ByteBuffer X) {
+        cshake.update(X);
+    }
+
+    /**
+     * Finish the message and squeeze the first bytes of the tag
+     * @param out buffer receiving the tag
+     * @param off offset of the first output byte in out
+     * @param len number of output bytes
+     */
+    public void finish(byte[] out, int off, int len) {
+        if (finished) {
+            throw new IllegalStateException("KMACXOF256 input already finished");
+        }
+        squeeze(out, off, len);
+    }
+
+    /**
+     * Finish the message and return the first L bits of the tag
+     * @param L the output length in bits
+     * @return the desired MAC tag
+     */
+    public byte[] finish(int L) {
+        byte[] output = new byte[L / 8];
+        finish(output, 0, output.length);
+        return output;
+    }
+
+    /**
+     * Squeeze further output, continuing from the previous call.
+     * Finishes the message first if that has not happened yet.
+     * @param out buffer receiving the output
+     * @param off offset of the first output byte in out
+     * @param len number of output bytes
+     */
+    public void squeeze(byte[] out, int off, int len) {
+        encodeLength();
+        cshake.squeeze(out, off, len);
+    }
+
+    /**
+     * Squeeze further output into a ByteBuffer, filling it up to its limit
+     * @param dst buffer receiving the output
+     */
+    public void squeeze(ByteBuffer dst) {
+        encodeLength();
+        cshake.squeeze(dst);
+    }
+
+    /**
+     * Squeeze further output into a channel, one buffer at a time, so that the
+     * output can be longer than any array (an unbounded XOF stream)
+     * @param out the channel receiving the output
+     * @param len number of output bytes
+     * @throws IOException if the write fails
+     */
+    public void squeeze(WritableByteChannel out, long len) throws IOException {
+        encodeLength();
+        cshake.squeeze(out, len);
+    }
+
+    /**
+     * XOR a slice in place with further output of one computation while
+     * absorbing it into another as message, in a single pass, when their
+     * sponges line up. Otherwise nothing is done.
+     * @param keystream the computation to squeeze from
+     * @param mac the computation to absorb into, not yet finished
+     * @param data the slice to transform
+     * @param off offset of the first byte
+     * @param len number of bytes
+     * @param absorbInput true to absorb the bytes before the XOR, false to absorb them after
+     * @return true if the slice was processed
+     */
+    static boolean xorSqueezeAbsorb(KMACXOF256Stream keystream, KMACXOF256Stream mac, byte[] data, int off, int len,
+                                    boolean absorbInput) {
+        if (mac.finished) {
+            throw new IllegalStateException("KMACXOF256 input already finished");
+        }
+        keystream.encodeLength();
+        return CSHAKE256Stream.xorSqueezeAbsorb(keystream.cshake, mac.cshake, data, off, len, absorbInput);
+    }
+
+    /**
+     * Absorb right_encode(0), marking arbitrary-length output, the first time output is requested
+     */
+    private void encodeLength() {
+        if (!finished) {
+            cshake.update(ARBITRARY_LENGTH);
+            finished = true;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded LRU keyring of recipient and signer public keys. A key file is
+ * identified by a fingerprint of its contents, cSHAKE256(file, 256, “”,
+ * “Key Fingerprint”), so a key seen before is neither parsed nor
+ * decompressed again, and a key file that changes gets a new entry.
+ * Each entry keeps its point and, built the first time the key is used in
+ * a multiplication, a table of odd multiples for scale and scaleG, so
+ * repeat operations against a hot key skip the table setup as well.
+ * <p>
+ * With a table directory configured (see TableFile), a hot key of order r
+ * gets a full FixedBaseTable instead, so multiplications by it need no
+ * doublings, in this process or any later one. A key whose table was saved by
+ * an earlier process maps it on first use. Any other key stays on its odd
+ * multiples until its HOT_USES-th multiplication, roughly where building the
+ * table has paid for itself, and is then saved and mapped, as long as the
+ * directory holds fewer than TableFile.MAX_KEY_TABLES tables. Each saved key
+ * costs about 1.2MB of disk; making the directory read-only after a warm-up
+ * run freezes which keys have one.
+ * @author Ethan Nesel
+ */
+public class KeyRing {
+    /**
+     * Maximum number of keys kept
+     */
+    private static final int CAPACITY = 512;
+    /**
+     * Largest key file read, far above any public key in either layout
+     */
+    private static final int MAX_KEY_FILE = 1 << 16;
+    /**
+     * NAF width of the per-key tables: 16 odd multiples, worth building once a
+     * key is reused
+     */
+    static final int WINDOW = 6;
+    /**
+     * Multiplications by a key before its fixed-base table is built and saved.
+     * Building costs about as much as 15 multiplications from the odd multiples,
+     * and each multiplication from the table then saves about one.
+     */
+    static final int HOT_USES = 16;
+    /**
+     * Customization string of the fingerprint
+     */
+    private static final byte[] FINGERPRINT_S = "Key Fingerprint".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * Entries in access order, eldest evicted first
+     */
+    private static final Map<ByteBuffer, Entry> KEYS = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Entry> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    /**
+     * A public key with its cached precomputation
+     */
+    static final class Entry {
+        /**
+         * Fingerprint of the key file the entry was read from
+         */
+        final byte[] fingerprint;
+        /**
+         * The public key
+         */
+        final EllipticPoint point;
+        /**
+         * Odd multiples of the point, null until first needed
+         */
+        private volatile OddMultiples table;
+        /**
+         * Saved fixed-base table of the point, mapped from the table directory
+         */
+        private volatile FixedBaseTable comb;
+        /**
+         * Whether the table directory has been searched for comb
+         */
+        private volatile boolean searched;
+        /**
+         * Multiplications by the key so far, while it has no fixed-base table
+         */
+        private final AtomicInteger uses = new AtomicInteger();
+
+        Entry(byte[] fingerprint, EllipticPoint point) {
+            this.fingerprint = fingerprint;
+            this.point = point;
+        }
+
+        /**
+         * Get the table of odd multiples of the key, building it on first use
+         * @return the table
+         */
+        OddMultiples table() {
+            FixedBaseTable saved = comb();
+            if (saved != null) {
+                return saved.odd;
+            }
+            OddMultiples built = table;
+            if (built == null) {
+                //Two threads may both build it; the tables are equal and either one is kept
+                built = new OddMultiples(point, WINDOW);
+                table = built;
+            }
+            return built;
+        }
+
+        /**
+         * Get the fixed-base table of the key, if an earlier process or an earlier
+         * use in this one saved it to the table directory
+         * @return the mapped table, or null
+         */
+        FixedBaseTable comb() {
+            if (!searched) {
+                //As with table, a race at worst maps the same file twice
+                comb = TableFile.enabled() ? TableFile.load(point) : null;
+                searched = true;
+            }
+            return comb;
+        }
+
+        /**
+         * Count a multiplication by the key, saving its fixed-base table once the
+         * key turns out to be hot
+         * @return the table to multiply with, or null to use the odd multiples
+         */
+        private FixedBaseTable use() {
+            FixedBaseTable saved = comb();
+            //Exactly one caller sees the count reach HOT_USES, so the table is built once
+            if (saved == null && uses.incrementAndGet() == HOT_USES && TableFile.enabled()
+                    && TableFile.hasRoom()
+                    //The table reduces scalars mod r, which is only right for a key of order r
+                    && EllipticPoint.scale(EllipticPoint.r, point).equals(new EllipticPoint())) {
+                TableFile.save(new FixedBaseTable(point));
+                //Used through the mapping, off the heap; if the save failed the key stays on its odd multiples
+                saved = TableFile.load(point);
+                comb = saved;
+            }
+            return saved;
+        }
+
+        /**
+         * Multiply the key by a scalar, from its fixed-base table when it has one
+         * @param k the scalar
+         * @return the point k * V
+         */
+        EllipticPoint multiply(BigInteger k) {
+            FixedBaseTable saved = use();
+            return saved != null ? saved.multiply(k) : EllipticPoint.scale(k, table());
+        }
+
+        /**
+         * Compute a * G + b * V, as used to verify a signature under this key
+         * @param a the scalar for G
+         * @param b the scalar for the key V
+         * @return the sum, in extended coordinates so callers can batch the inversion
+         */
+        ExtendedPoint scaleG(BigInteger a, BigInteger b) {
+            FixedBaseTable saved = use();
+            return saved != null ? EllipticPoint.scaleG(a, b, saved) : EllipticPoint.scaleG(a, b, table());
+        }
+    }
+
+    /**
+     * Get the key in a public key file, parsing it only the first time its contents are seen
+     * @param file the public key file, binary or legacy text
+     * @return the keyring entry
+     * @throws IOException if the file cannot be read or is not a public key
+     */
+    public static Entry get(File file) throws IOException {
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (in.size() > MAX_KEY_FILE) {
+                throw new IOException("Not a public key file");
+            }
+            byte[] contents = new byte[(int) in.size()];
+            Functions.readFully(in, contents, 0);
+            byte[] fingerprint = new CSHAKE256().cSHAKE256(contents, 256, new byte[0], FINGERPRINT_S);
+            ByteBuffer key = ByteBuffer.wrap(fingerprint);
+            Entry entry = lookup(key);
+            if (entry == null) {
+                entry = new Entry(fingerprint, PartTwoFunctionality.readPublicKey(in));
+                store(key, entry);
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Look up a key
+     * @param fingerprint the key file fingerprint
+     * @return the entry, or null
+     */
+    private static Entry lookup(ByteBuffer fingerprint) {
+        synchronized (KEYS) {
+            return KEYS.get(fingerprint);
+        }
+    }
+
+    /**
+     * Add a key, evicting the least recently used one if the keyring is full
+     * @param fingerprint the key file fingerprint
+     * @param entry the entry
+     */
+    private static void store(ByteBuffer fingerprint, Entry entry) {
+        synchronized (KEYS) {
+            KEYS.putIfAbsent(fingerprint, entry);
+        }
+    }
+}
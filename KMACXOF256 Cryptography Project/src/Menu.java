@@ -29,7 +29,7 @@ public class Menu {
                 menuScan.next(); // this is important!
             }
             number = menuScan.nextInt();
-        } while (number > 11 || number < 1);
+        } while (number > 16 || number < 1);
         switch (number) {
             case 1 -> PartOneFunctionality.plainHashFile();
             case 2 -> PartOneFunctionality.plainHashText();
@@ -42,6 +42,11 @@ public class Menu {
             case 9 -> PartTwoFunctionality.signatureGen();
             case 10 -> PartTwoFunctionality.verifySig();
             case 11 -> System.exit(1);
+            case 12 -> PartOneFunctionality.parallelHashFile();
+            case 13 -> PartOneFunctionality.chunkedEncryptFile();
+            case 14 -> PartOneFunctionality.chunkedDecrypt();
+            case 15 -> PartOneFunctionality.chunkedDecryptRange();
+            case 16 -> PartTwoFunctionality.batchVerifySig();
             default -> mainMenu();
         }
     }
@@ -62,6 +67,12 @@ public class Menu {
         System.out.println("8 Decrypt a file under Schnorr/ECDHIES");
         System.out.println("9 Create a signature for a file");
         System.out.println("10 Verify a signature");
-        System.out.println("\nEnter 11 to exit");
+        System.out.println("\nEnter 11 to exit\n");
+        //New options go after exit, so that 11 stays exit for existing users and scripts
+        System.out.println("12 Compute ParallelHash of a File (uses every core)");
+        System.out.println("13 Encrypt a Data File in Parallel Chunks");
+        System.out.println("14 Decrypt a Chunked Cryptogram");
+        System.out.println("15 Decrypt a Byte Range of a Chunked Cryptogram");
+        System.out.println("16 Verify a Batch of Signatures from a List File");
     }
 }
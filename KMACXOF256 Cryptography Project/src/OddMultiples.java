@@ -0,0 +1,63 @@
+/**
+ * The odd multiples of a point and their negatives, the table a width-w
+ * NAF scalar multiplication adds from (see EllipticPoint.interleave).
+ * A table is read-only once built, so it can be shared between threads and
+ * reused for every multiplication of the same point.
+ * @author Ethan Nesel
+ */
+class OddMultiples {
+    /**
+     * P, 3P, 5P, ..., (2^(w - 1) - 1)P
+     */
+    final ExtendedPoint[] odd;
+    /**
+     * -P, -3P, -5P, ..., -(2^(w - 1) - 1)P
+     */
+    final ExtendedPoint[] negated;
+    /**
+     * The NAF width the table serves
+     */
+    final int window;
+
+    /**
+     * Build the table for a point
+     * @param pt the point P
+     * @param window the NAF width w, 2 &lt;= w &lt;= 30
+     */
+    OddMultiples(EllipticPoint pt, int window) {
+        this(multiples(pt, window), window);
+    }
+
+    /**
+     * Wrap odd multiples computed earlier, such as those read from a table file
+     * @param odd P, 3P, ..., (2^(w - 1) - 1)P
+     * @param window the NAF width w
+     */
+    OddMultiples(ExtendedPoint[] odd, int window) {
+        this.window = window;
+        this.odd = odd;
+        negated = new ExtendedPoint[odd.length];
+        for (int i = 0; i < odd.length; i++) {
+            negated[i] = new ExtendedPoint(odd[i]);
+            negated[i].negate();
+        }
+    }
+
+    /**
+     * Compute the odd multiples of a point
+     * @param pt the point P
+     * @param window the NAF width w
+     * @return P, 3P, ..., (2^(w - 1) - 1)P
+     */
+    private static ExtendedPoint[] multiples(EllipticPoint pt, int window) {
+        ExtendedPoint[] odd = new ExtendedPoint[1 << (window - 2)];
+        odd[0] = new ExtendedPoint(pt);
+        ExtendedPoint twice = new ExtendedPoint(odd[0]);
+        twice.dbl();
+        for (int i = 1; i < odd.length; i++) {
+            odd[i] = new ExtendedPoint(odd[i - 1]);
+            odd[i].add(twice);
+        }
+        return odd;
+    }
+}
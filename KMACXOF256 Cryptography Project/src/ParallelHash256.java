@@ -0,0 +1,198 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * ParallelHash256 and ParallelHashXOF256 from NIST SP 800-185. The input is
+ * cut into blocks of B bytes, each block is hashed independently with
+ * cSHAKE256 on a ForkJoinPool, and the chaining values are fed in order into
+ * a final cSHAKE256 under the function name “ParallelHash”.
+ * @author Ethan Nesel
+ */
+public class ParallelHash256 {
+    /**
+     * Function name used by ParallelHash
+     */
+    private static final byte[] PARALLEL_HASH_N = "ParallelHash".getBytes(StandardCharsets.UTF_8);
+    /**
+     * Length in bytes of each block's chaining value, cSHAKE256(block, 512, “”, “”)
+     */
+    private static final int CHAIN_LENGTH = 64;
+    /**
+     * Number of blocks whose chaining values are computed before being absorbed,
+     * bounding the memory held for chaining values on very large inputs
+     */
+    private static final int BATCH_BLOCKS = 4096;
+    /**
+     * Blocks below which a task stops splitting and hashes sequentially
+     */
+    private static final int SEQUENTIAL_BLOCKS = 8;
+    /**
+     * Upper bound for each memory-mapped window of a file, rounded down to whole blocks
+     */
+    private static final long MAP_WINDOW_SIZE = 1L << 30;
+    /**
+     * Block size used for hashing files, in bytes
+     */
+    public static final int FILE_BLOCK_SIZE = 8192;
+
+    /**
+     * Compute ParallelHash256
+     * @param X the main input bit string
+     * @param B the block size in bytes
+     * @param L the output length in bits
+     * @param S an optional customization bit string
+     * @return the desired hash value
+     */
+    //Utilizing NIST.SP.800-185 section 6.3
+    public static byte[] parallelHash256(byte[] X, int B, int L, byte[] S) {
+        CSHAKE256Stream hash = start(B, S);
+        long n = absorbBlocks(hash, ByteBuffer.wrap(X), B);
+        return finish(hash, n, L, L);
+    }
+
+    /**
+     * Compute ParallelHashXOF256
+     * @param X the main input bit string
+     * @param B the block size in bytes
+     * @param L the output length in bits
+     * @param S an optional customization bit string
+     * @return the desired hash value
+     */
+    //Utilizing NIST.SP.800-185 section 6.3.1
+    public static byte[] parallelHashXOF256(byte[] X, int B, int L, byte[] S) {
+        CSHAKE256Stream hash = start(B, S);
+        long n = absorbBlocks(hash, ByteBuffer.wrap(X), B);
+        return finish(hash, n, 0, L);
+    }
+
+    /**
+     * Compute ParallelHash256 or ParallelHashXOF256 of a file, mapping it in
+     * windows so that files over 2 GB are covered and nothing is copied onto the heap
+     * @param file the file to hash
+     * @param B the block size in bytes
+     * @param L the output length in bits
+     * @param S an optional customization bit string
+     * @param xof true for ParallelHashXOF256, false for ParallelHash256
+     * @return the desired hash value
+     * @throws IOException if the file cannot be mapped
+     */
+    public static byte[] hashFile(File file, int B, int L, byte[] S, boolean xof) throws IOException {
+        CSHAKE256Stream hash = start(B, S);
+        long n = 0;
+        long window = Math.max(B, MAP_WINDOW_SIZE / B * B);
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = in.size();
+            for (long position = 0; position < size; position += window) {
+                long length = Math.min(window, size - position);
+                n += absorbBlocks(hash, in.map(FileChannel.MapMode.READ_ONLY, position, length), B);
+            }
+        }
+        return finish(hash, n, xof ? 0 : L, L);
+    }
+
+    /**
+     * Begin the outer cSHAKE256 and absorb left_encode(B)
+     * @param B the block size in bytes
+     * @param S an optional customization bit string
+     * @return the outer computation
+     */
+    private static CSHAKE256Stream start(int B, byte[] S) {
+        if (B <= 0) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+        CSHAKE256Stream hash = SpongeStateCache.cshake(PARALLEL_HASH_N, S);
+        byte[] encoded = new byte[9];
+        hash.update(encoded, 0, Functions.left_encode(B, encoded, 0));
+        return hash;
+    }
+
+    /**
+     * Absorb right_encode(n) || right_encode(L) and squeeze the output
+     * @param hash the outer computation
+     * @param n the number of blocks
+     * @param encodedL the value of L to encode, 0 for the XOF variant
+     * @param L the output length in bits
+     * @return the desired hash value
+     */
+    private static byte[] finish(CSHAKE256Stream hash, long n, int encodedL, int L) {
+        byte[] encoded = new byte[18];
+        int len = Functions.right_encode(n, encoded, 0);
+        len += Functions.right_encode(encodedL, encoded, len);
+        hash.update(encoded, 0, len);
+        return hash.finish(L);
+    }
+
+    /**
+     * Hash every block of the buffer in parallel, in batches, and absorb the
+     * chaining values in order. Only the last block of the buffer may be short.
+     * @param hash the outer computation
+     * @param X the input, from its position to its limit
+     * @param B the block size in bytes
+     * @return the number of blocks absorbed
+     */
+    private static long absorbBlocks(CSHAKE256Stream hash, ByteBuffer X, int B) {
+        int start = X.position();
+        int length = X.remaining();
+        int blocks = (int) (((long) length + B - 1) / B);
+        byte[] chain = new byte[Math.min(blocks, BATCH_BLOCKS) * CHAIN_LENGTH];
+        for (int first = 0; first < blocks; first += BATCH_BLOCKS) {
+            int count = Math.min(BATCH_BLOCKS, blocks - first);
+            ForkJoinPool.commonPool().invoke(new BlockTask(X, start, length, B, first, count, chain, 0));
+            hash.update(chain, 0, count * CHAIN_LENGTH);
+        }
+        return blocks;
+    }
+
+    /**
+     * Task computing cSHAKE256(block, 512, “”, “”) for a run of blocks, splitting
+     * the run in half until it is small enough to hash sequentially
+     */
+    private static final class BlockTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final ByteBuffer input;
+        private final int start;
+        private final int length;
+        private final int blockSize;
+        private final int first;
+        private final int count;
+        private final byte[] chain;
+        private final int chainOffset;
+
+        BlockTask(ByteBuffer input, int start, int length, int blockSize, int first, int count,
+                  byte[] chain, int chainOffset) {
+            this.input = input;
+            this.start = start;
+            this.length = length;
+            this.blockSize = blockSize;
+            this.first = first;
+            this.count = count;
+            this.chain = chain;
+            this.chainOffset = chainOffset;
+        }
+
+        @Override
+        protected void compute() {
+            if (count <= SEQUENTIAL_BLOCKS) {
+                for (int i = 0; i < count; i++) {
+                    long from = (long) (first + i) * blockSize;
+                    int len = (int) Math.min(blockSize, length - from);
+                    //With empty N and S, cSHAKE256 is SHAKE256
+                    CSHAKE256Stream leaf = new CSHAKE256Stream(null, null);
+                    leaf.update(input.slice(start + (int) from, len));
+                    leaf.finish(chain, chainOffset + i * CHAIN_LENGTH, CHAIN_LENGTH);
+                }
+                return;
+            }
+            int half = count / 2;
+            invokeAll(new BlockTask(input, start, length, blockSize, first, half, chain, chainOffset),
+                    new BlockTask(input, start, length, blockSize, first + half, count - half, chain,
+                            chainOffset + half * CHAIN_LENGTH));
+        }
+    }
+}
@@ -1,9 +1,12 @@
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.SecureRandom;
 import java.util.Arrays;
 import java.util.Scanner;
@@ -20,30 +23,52 @@ public class PartOneFunctionality {
      * Computes the plain cryptographic hash of a given file
      */
     public static void plainHashFile() {
-        //Initialize a fresh KMACXOF256
-        KMACXOF256 kmacForHashFile = new KMACXOF256();
+        //h <- KMACXOF256(“”, m, 512, “D”), with m absorbed from a memory map of the file
+        KMACXOF256Stream kmacForHashFile = KMACXOF256Stream.cached("".getBytes(), "D".getBytes());
 
         //File Selection
         System.out.println("Please select a file to hash.");
         File selectFileToHash = Functions.selectFile();
-        //Convert file input to byte array
-        byte[] m = null;
         try {
             assert selectFileToHash != null;
-            m = Files.readAllBytes(selectFileToHash.toPath());
+            Functions.absorbMappedFile(kmacForHashFile, selectFileToHash);
         } catch (IOException e) {
             System.out.println("Could not read from file.\n");
             Menu.mainMenu();
         }
 
-        //h <- KMACXOF256(“”, m, 512, “D”)
-        byte[] h = kmacForHashFile.KMACXOF256("".getBytes(), m, 512,"D".getBytes());
+        byte[] h = kmacForHashFile.finish(512);
         System.out.println("Plain Hash of File Input: " + Functions.bytesToHex(h) + "\n");
 
         //Return to menu
         Menu.mainMenu();
     }
 
+    /**
+     * Computes the cryptographic hash of a given file with ParallelHashXOF256,
+     * hashing 8 KiB blocks of the file on all cores
+     */
+    public static void parallelHashFile() {
+        //File Selection
+        System.out.println("Please select a file to hash.");
+        File selectFileToHash = Functions.selectFile();
+
+        //h <- ParallelHashXOF256(m, 8192, 512, “D”)
+        byte[] h = null;
+        try {
+            assert selectFileToHash != null;
+            h = ParallelHash256.hashFile(selectFileToHash, ParallelHash256.FILE_BLOCK_SIZE, 512,
+                    "D".getBytes(), true);
+        } catch (IOException e) {
+            System.out.println("Could not read from file.\n");
+            Menu.mainMenu();
+        }
+        System.out.println("ParallelHash of File Input: " + Functions.bytesToHex(h) + "\n");
+
+        //Return to menu
+        Menu.mainMenu();
+    }
+
     /**
      * Computes a plain cryptographic hash of text input
      */
@@ -70,6 +95,8 @@ public class PartOneFunctionality {
     /**
      * Encrypts a given data file symmetrically under a given
      * passphrase. The output takes the form of the file name + .crypto
+     * The file is streamed through one buffer at a time, so files larger
+     * than the heap can be encrypted.
      */
     public static void symmetricEncryptFile() {
         //Initialize a fresh KMACXOF256
@@ -84,16 +111,8 @@ public class PartOneFunctionality {
         //File Selection
         System.out.println("Select a file to encrypt.");
         File selectedToEncrypt = Functions.selectFile();
+        assert selectedToEncrypt != null;
 
-        //Convert file input to byte array
-        byte[] m = null;
-        try {
-            assert selectedToEncrypt != null;
-            m = Files.readAllBytes(selectedToEncrypt.toPath());
-        } catch (IOException e) {
-            System.out.println("Could not read from file.\n");
-            Menu.mainMenu();
-        }
         //Random(512)
         SecureRandom rand = new SecureRandom();
         byte[] z = new byte[64];
@@ -103,42 +122,46 @@ public class PartOneFunctionality {
         byte[] pw = pass.getBytes();
         byte[] kellka = kmacSEncrypt.KMACXOF256(Functions.concat(z,pw),"".getBytes(), 1024,
                 "S".getBytes());
-
-        //c <- KMACXOF256(ke, “”, |m|, “SKE”) XOR m
         byte[] ke = Arrays.copyOfRange(kellka, 0,64);
-        byte[] cPartOne  = kmacSEncrypt.KMACXOF256(ke, "".getBytes(), (m.length * 8),
-                "SKE".getBytes());
-        byte[] c = new byte[m.length];
-        for (int j = 0; j < m.length; j++) {
-            c[j] =  (byte)(cPartOne[j] ^ m[j]);
-        }
-
-        //t <- KMACXOF256(ka, m, 512, “SKA”)
         byte[] ka = Arrays.copyOfRange(kellka, 64,128);
-        byte[] t  = kmacSEncrypt.KMACXOF256(ka, m, 512, "SKA".getBytes());
 
-        //Output
+        //c <- KMACXOF256(ke, “”, |m|, “SKE”) XOR m and t <- KMACXOF256(ka, m, 512, “SKA”),
+        //computed together one chunk of m at a time
+        StreamCipher cipher = new StreamCipher(ke, ka, "SKE".getBytes(), "SKA".getBytes(), true);
+
+        //Output, binary z, c, t or legacy hex(z) “\n” hex(c) “\n” hex(t)
         String fileNameWithOutExt = selectedToEncrypt.getName()
                 .replaceFirst("[.][^.]+$", "");
 
         File cryptogram = new File(fileNameWithOutExt + ".crypto");
-        try {
-            FileWriter myWriter = new FileWriter(cryptogram);
-            myWriter.write(Functions.bytesToHex(z) + "\n");
-            myWriter.write(Functions.bytesToHex(c) + "\n");
-            myWriter.write(Functions.bytesToHex(t));
-            myWriter.close();
-            System.out.println("Successfully created cryptogram\n");
-            Menu.mainMenu();
+        boolean binary = CryptoFile.writeBinary();
+        boolean created = false;
+        try (FileChannel in = FileChannel.open(selectedToEncrypt.toPath(), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(cryptogram.toPath(), StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            if (binary) {
+                CryptoFile.writeHeader(out, CryptoFile.SYMMETRIC);
+                CryptoFile.writeField(out, z);
+            } else {
+                Functions.writeFully(out, ByteBuffer.wrap((Functions.bytesToHex(z) + "\n")
+                        .getBytes(StandardCharsets.US_ASCII)));
+            }
+            CryptoFile.encryptBody(in, out, cipher, binary);
+            created = true;
         } catch (IOException e) {
             System.out.println("Error with creating cryptogram, returning to menu\n");
-            Menu.mainMenu();
         }
+        if (created) {
+            System.out.println("Successfully created cryptogram\n");
+        }
+        Menu.mainMenu();
     }
 
     /**
      * Decrypts a given symmetric cryptogram under a given
      * passphrase. The output takes the name of crypto file name + .decoded
+     * The ciphertext is streamed through one buffer at a time into a
+     * temporary file, which only replaces the output once the tag matches.
      */
     public static void symmetricDecrypt() {
         //Initialize a fresh KMACXOF256
@@ -152,62 +175,209 @@ public class PartOneFunctionality {
         //File Selection
         System.out.println("Select a cryptogram file to decrypt");
         File selectedToDecrypt = Functions.selectFile();
-        Scanner fileScanner = null;
-        try {
-            assert selectedToDecrypt != null;
-            fileScanner = new Scanner(selectedToDecrypt);
-        } catch (FileNotFoundException e) {
-            System.out.println("File not readable, returning to menu\n");
-            Menu.mainMenu();
+        assert selectedToDecrypt != null;
+
+        String fileNameWithOutExt = selectedToDecrypt.getName()
+                .replaceFirst("[.][^.]+$", "");
+        File decryptedCryptogram = new File(fileNameWithOutExt + ".decrypted");
+
+        //Chunked cryptograms carry their own layout and are decrypted chunk by chunk
+        if (isChunked(selectedToDecrypt)) {
+            decryptChunked(selectedToDecrypt, decryptedCryptogram, pass);
+            return;
         }
 
-        //Reformat cryptogram parts to byte arrays
-        assert fileScanner != null;
-        byte[] zBytes = Functions.hexStringToByteArray(fileScanner.next());
-        byte[] cBytes = Functions.hexStringToByteArray(fileScanner.next());
-        byte[] tBytes = Functions.hexStringToByteArray(fileScanner.next());
-        fileScanner.close();
+        boolean accepted = false;
+        Path partial = null;
+        try (FileChannel in = FileChannel.open(selectedToDecrypt.toPath(), StandardOpenOption.READ)) {
+            byte[] zBytes;
+            byte[] tBytes;
+            long cStart;
+            long cEnd;
+            boolean hex = CryptoFile.type(in) < 0;
+            if (!hex) {
+                //Binary layout is header, z, c, t
+                CryptoFile.Reader reader = new CryptoFile.Reader(in, CryptoFile.SYMMETRIC);
+                zBytes = reader.field();
+                cStart = reader.skipRaw();
+                cEnd = reader.position();
+                tBytes = reader.field();
+            } else {
+                //Legacy layout is hex(z) “\n” hex(c) “\n” hex(t), with z and t 64 bytes each
+                CryptoFile.LegacyText text = new CryptoFile.LegacyText(in, 1, 64);
+                byte[] zHex = text.leading[0].getBytes(StandardCharsets.US_ASCII);
+                if (zHex.length != 128) {
+                    throw new IOException("Not a symmetric cryptogram");
+                }
+                zBytes = new byte[64];
+                HexCodec.decode(zHex, 0, zBytes.length, zBytes, 0);
+                cStart = text.cStart;
+                cEnd = text.cEnd;
+                tBytes = text.t;
+            }
 
-        //(ke || ka) <- KMACXOF256(z || pw, “”, 1024, “S”)
-        byte[] pw = pass.getBytes();
-        byte[] kellka = kmacSDecrypt.KMACXOF256(Functions.concat(zBytes,pw),
-                "".getBytes(), 1024, "S".getBytes());
+            //(ke || ka) <- KMACXOF256(z || pw, “”, 1024, “S”)
+            byte[] pw = pass.getBytes();
+            byte[] kellka = kmacSDecrypt.KMACXOF256(Functions.concat(zBytes,pw),
+                    "".getBytes(), 1024, "S".getBytes());
+            byte[] ke = Arrays.copyOfRange(kellka, 0,64);
+            byte[] ka = Arrays.copyOfRange(kellka, 64,128);
+
+            //m <- KMACXOF256(ke, “”, |c|, “SKE”) XOR c and t’ <- KMACXOF256(ka, m, 512, “SKA”),
+            //computed together one chunk of c at a time
+            StreamCipher cipher = new StreamCipher(ke, ka, "SKE".getBytes(), "SKA".getBytes(), false);
+            partial = Files.createTempFile(decryptedCryptogram.getAbsoluteFile().toPath().getParent(),
+                    fileNameWithOutExt, ".partial");
+            try (FileChannel out = FileChannel.open(partial, StandardOpenOption.WRITE)) {
+                CryptoFile.decryptBody(in, cStart, cEnd, hex, cipher, out);
+            }
 
-        //m <- KMACXOF256(ke, “”, |c|, “SKE”) XOR c
-        byte[] ke = Arrays.copyOfRange(kellka, 0,64);
-        byte[] mPartOne  = kmacSDecrypt.KMACXOF256(ke, "".getBytes(),
-                (cBytes.length * 8), "SKE".getBytes());
+            //Output condition
+            if (Arrays.equals(cipher.tag(), tBytes)) {
+                Files.move(partial, decryptedCryptogram.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                accepted = true;
+            } else {
+                Files.delete(partial);
+                System.out.println("Mismatch detected, NOT ACCEPTED\n");
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Error creating output, returning to menu\n");
+            if (partial != null) {
+                partial.toFile().delete();
+            }
+        }
+        if (accepted) {
+            System.out.println("Successfully decrypted file\n");
+        }
+        Menu.mainMenu();
+    }
 
-        byte[] m = new byte[cBytes.length];
-        for (int j = 0; j < m.length; j++) {
-            m[j] =  (byte)(mPartOne[j] ^ cBytes[j]);
+    /**
+     * Encrypts a given data file symmetrically under a given passphrase into
+     * the chunked cryptogram layout, working on chunks in parallel.
+     * The output takes the form of the file name + .chunked
+     */
+    public static void chunkedEncryptFile() {
+        //Get password
+        System.out.println("Enter password to encrypt file with:");
+        Scanner userInput = new Scanner(System.in);
+        String pass = userInput.nextLine();
+
+        //File Selection
+        System.out.println("Select a file to encrypt.");
+        File selectedToEncrypt = Functions.selectFile();
+        assert selectedToEncrypt != null;
+
+        String fileNameWithOutExt = selectedToEncrypt.getName()
+                .replaceFirst("[.][^.]+$", "");
+        File cryptogram = new File(fileNameWithOutExt + ".chunked");
+        try {
+            ChunkedCryptogram.encrypt(selectedToEncrypt.toPath(), cryptogram.toPath(), pass.getBytes(),
+                    ChunkedCryptogram.DEFAULT_CHUNK_SIZE);
+            System.out.println("Successfully created cryptogram\n");
+        } catch (IOException e) {
+            System.out.println("Error with creating cryptogram, returning to menu\n");
         }
+        Menu.mainMenu();
+    }
 
-        //t’ <- KMACXOF256(ka, m, 512, “SKA”)
-        byte[] ka = Arrays.copyOfRange(kellka, 64,128);
-        byte[] tPrime  = kmacSDecrypt.KMACXOF256(ka, m, 512, "SKA".getBytes());
-
-        //Output condition
-        if (Arrays.equals(tPrime, tBytes)) {
-            //Output
-            String fileNameWithOutExt = selectedToDecrypt.getName()
-                    .replaceFirst("[.][^.]+$", "");
-
-            File decryptedCryptogram = new File(fileNameWithOutExt + ".decrypted");
-            try {
-                FileWriter myWriter = new FileWriter(decryptedCryptogram);
-                myWriter.write((new String(m, StandardCharsets.UTF_8)));
-                myWriter.close();
+    /**
+     * Decrypts a whole chunked cryptogram under a given passphrase, working on
+     * chunks in parallel. The output takes the name of the cryptogram file name + .decrypted
+     */
+    public static void chunkedDecrypt() {
+        //Get password
+        System.out.println("Enter password:");
+        Scanner userInput = new Scanner(System.in);
+        String pass = userInput.nextLine();
+
+        //File Selection
+        System.out.println("Select a chunked cryptogram file to decrypt");
+        File selectedToDecrypt = Functions.selectFile();
+        assert selectedToDecrypt != null;
+
+        String fileNameWithOutExt = selectedToDecrypt.getName()
+                .replaceFirst("[.][^.]+$", "");
+        File decrypted = new File(fileNameWithOutExt + ".decrypted");
+        decryptChunked(selectedToDecrypt, decrypted, pass);
+    }
+
+    /**
+     * Decrypts a chunked cryptogram, reports the result and returns to the menu
+     * @param cryptogram the chunked cryptogram
+     * @param decrypted the plaintext file to create
+     * @param pass the passphrase
+     */
+    private static void decryptChunked(File cryptogram, File decrypted, String pass) {
+        try {
+            if (ChunkedCryptogram.decrypt(cryptogram.toPath(), decrypted.toPath(), pass.getBytes())) {
                 System.out.println("Successfully decrypted file\n");
-                Menu.mainMenu();
-            } catch (IOException e) {
-                System.out.println("Error creating output, returning to menu\n");
-               Menu.mainMenu();
+            } else {
+                System.out.println("Mismatch detected, NOT ACCEPTED\n");
             }
-        } else {
-            System.out.println("Mismatch detected, NOT ACCEPTED\n");
-            Menu.mainMenu();
+        } catch (IOException e) {
+            System.out.println("Error creating output, returning to menu\n");
+        }
+        Menu.mainMenu();
+    }
+
+    /**
+     * Check if a file is a chunked cryptogram
+     * @param file the file to check
+     * @return true if it starts with the chunked cryptogram header
+     */
+    private static boolean isChunked(File file) {
+        try {
+            return ChunkedCryptogram.isChunked(file.toPath());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Decrypts only a byte range of a chunked cryptogram under a given passphrase,
+     * reading just the chunks that overlap it.
+     * The output takes the name of the cryptogram file name + .range
+     */
+    public static void chunkedDecryptRange() {
+        //Get password and range
+        System.out.println("Enter password:");
+        Scanner userInput = new Scanner(System.in);
+        String pass = userInput.nextLine();
+        System.out.println("Enter the offset of the first byte to decrypt:");
+        while (!userInput.hasNextLong()) {
+            System.out.println("That's not even an integer!");
+            userInput.next();
         }
+        long from = userInput.nextLong();
+        System.out.println("Enter the number of bytes to decrypt:");
+        while (!userInput.hasNextInt()) {
+            System.out.println("That's not even an integer!");
+            userInput.next();
+        }
+        int length = userInput.nextInt();
+        //Drop the rest of the line, so the next prompt starts on a fresh one
+        userInput.nextLine();
+
+        //File Selection
+        System.out.println("Select a chunked cryptogram file to decrypt");
+        File selectedToDecrypt = Functions.selectFile();
+        assert selectedToDecrypt != null;
+
+        String fileNameWithOutExt = selectedToDecrypt.getName()
+                .replaceFirst("[.][^.]+$", "");
+        try {
+            byte[] m = ChunkedCryptogram.decryptRange(selectedToDecrypt.toPath(), pass.getBytes(), from, length);
+            if (m != null) {
+                Files.write(new File(fileNameWithOutExt + ".range").toPath(), m);
+                System.out.println("Successfully decrypted " + m.length + " bytes\n");
+            } else {
+                System.out.println("Mismatch detected, NOT ACCEPTED\n");
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Error creating output, returning to menu\n");
+        }
+        Menu.mainMenu();
     }
 
     /**
@@ -215,31 +385,26 @@ public class PartOneFunctionality {
      * under a given passphrase.
      */
     public static void authTag() {
-        //Initialize a fresh KMACXOF256
-        KMACXOF256 kmacTag = new KMACXOF256();
-
         //Get password
         System.out.println("Enter password for auth tag creation:");
         Scanner userInput = new Scanner(System.in);
         String pass = userInput.nextLine();
 
+        //Create tag t <- KMACXOF256(pw, m, 512, “T”), with m absorbed from a memory map of the file
+        byte[] pw = pass.getBytes();
+        KMACXOF256Stream kmacTag = new KMACXOF256Stream(pw, "T".getBytes());
 
         //File Selection
         System.out.println("Select a file to create an auth tag for");
         File selectedForAuth = Functions.selectFile();
-
-        //Convert file input to byte array
-        byte[] m = null;
         try {
             assert selectedForAuth != null;
-            m = Files.readAllBytes(selectedForAuth.toPath());
+            Functions.absorbMappedFile(kmacTag, selectedForAuth);
         } catch (IOException e) {
             System.out.println("Could not read from file\n");
             Menu.mainMenu();
         }
-        //Create tag t <- KMACXOF256(pw, m, 512, “T”)
-        byte[] pw = pass.getBytes();
-        byte[] tag  = kmacTag.KMACXOF256(pw, m, 512, "T".getBytes());
+        byte[] tag = kmacTag.finish(512);
         System.out.println("Tag: " + Functions.bytesToHex(tag) +"\n");
         Menu.mainMenu();
     }
@@ -1,12 +1,17 @@
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.SecureRandom;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
 
 /**
@@ -35,22 +40,24 @@ public class PartTwoFunctionality {
         BigInteger sPartTwo = BigInteger.valueOf(4).multiply(sValue);
 
         //Public Key
-        EllipticPoint G = new EllipticPoint(BigInteger.valueOf(4), false);
-        EllipticPoint V = EllipticPoint.scale(sPartTwo, G);
+        EllipticPoint V = EllipticPoint.scaleG(sPartTwo);
 
-        //Output public key components to file
+        //Output public key components to file, binary compressed V or legacy decimal lines
         File publicKey = new File(pass + ".pub_key_file");
         System.out.println("Keys created\n");
-        try {
-            FileWriter myWriter = new FileWriter(publicKey);
-            myWriter.write(V.getX().toString() + "\n");
-            myWriter.write(V.getY().toString());
-            myWriter.close();
-            Menu.mainMenu();
+        try (FileChannel out = FileChannel.open(publicKey.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            if (CryptoFile.writeBinary()) {
+                CryptoFile.writeHeader(out, CryptoFile.PUBLIC_KEY);
+                CryptoFile.writePoint(out, V);
+            } else {
+                Functions.writeFully(out, ByteBuffer.wrap((V.getX() + "\n" + V.getY())
+                        .getBytes(StandardCharsets.US_ASCII)));
+            }
         } catch (IOException e) {
             System.out.println("Error, returning to menu\n");
-            Menu.mainMenu();
         }
+        Menu.mainMenu();
     }
 
     /**
@@ -64,16 +71,8 @@ public class PartTwoFunctionality {
         //File Selection (the file to be encrypted)
         System.out.println("Select file to encrypt");
         File selected = Functions.selectFile();
+        assert selected != null;
 
-        //Convert file input to byte array
-        byte[] m = null;
-        try {
-            assert selected != null;
-            m = Files.readAllBytes(selected.toPath());
-        } catch (IOException e) {
-            System.out.println("Could not read from file\n");
-            Menu.mainMenu();
-        }
         //Random(512) = k
         SecureRandom rand = new SecureRandom();
         byte[] kInitial = new byte[65];
@@ -81,66 +80,59 @@ public class PartTwoFunctionality {
         kInitial[0] = 0;
         //k = 4k
         BigInteger k = BigInteger.valueOf(4).multiply(new BigInteger(kInitial));
-        //Initialize G
-        EllipticPoint G = new EllipticPoint(BigInteger.valueOf(4), false);
 
         //File Selection for V (the public key file)
         System.out.println("Select public key file");
         File selectV = Functions.selectFile();
 
-        BigInteger xComp = null;
-        BigInteger yComp = null;
-
+        //Public Key, from the keyring when this key has been used before
+        KeyRing.Entry V = null;
         try {
-            Scanner scan = new Scanner(selectV);
-            xComp = new BigInteger(scan.nextLine());
-            yComp = new BigInteger(scan.nextLine());
-            scan.close();
-        } catch (FileNotFoundException e) {
+            V = KeyRing.get(selectV);
+        } catch (IOException e) {
             System.out.println("Error with file reading, returned to menu\n");
             Menu.mainMenu();
         }
-
-        //Public Key
-        assert xComp != null;
-        EllipticPoint V = new EllipticPoint(xComp, yComp);
+        assert V != null;
         //k*V
-        EllipticPoint W = EllipticPoint.scale(k, V);
+        EllipticPoint W = V.multiply(k);
         //k*G
-        EllipticPoint Z = EllipticPoint.scale(k, G);
+        EllipticPoint Z = EllipticPoint.scaleG(k);
 
         //(ke || ka) <- KMACXOF256(wSubX, “”, 1024, “P”)
         byte[] wSubX = W.getX().toByteArray();
         byte[] kellka = kmacEE.KMACXOF256(wSubX, "".getBytes(), 1024, "P".getBytes());
-
-        //c <- KMACXOF256(ke, “”, |m|, “PKE”) XOR m
         byte[] ke = Arrays.copyOfRange(kellka, 0,64);
-        byte[] cPartOne  = kmacEE.KMACXOF256(ke, "".getBytes(), m.length * 8, "PKE".getBytes());
-        byte[] c = new byte[m.length];
-
-        for (int j = 0; j < m.length; j++) {
-            c[j] =  (byte)(m[j] ^ cPartOne[j]);
-        }
-        //t <- KMACXOF256(ka, m, 512, “PKA”)
         byte[] ka = Arrays.copyOfRange(kellka, 64,128);
-        byte[] t  = kmacEE.KMACXOF256(ka, m, 512, "PKA".getBytes());
 
-        //Output
+        //c <- KMACXOF256(ke, “”, |m|, “PKE”) XOR m and t <- KMACXOF256(ka, m, 512, “PKA”),
+        //computed together one chunk of m at a time
+        StreamCipher cipher = new StreamCipher(ke, ka, "PKE".getBytes(), "PKA".getBytes(), true);
+
+        //Output, binary compressed Z, c, t or legacy Zx “\n” Zy “\n” hex(c) “\n” hex(t)
         String fileNameWithOutExt = selected.getName().replaceFirst("[.][^.]+$", "");
         File cryptogram = new File(fileNameWithOutExt + ".encrypted_schnorr_ecdhies");
-        try {
-            FileWriter myWriter = new FileWriter(cryptogram);
-            myWriter.write(Z.getX().toString() + "\n");
-            myWriter.write(Z.getY().toString() + "\n");
-            myWriter.write(Functions.bytesToHex(c) + "\n");
-            myWriter.write(Functions.bytesToHex(t));
-            myWriter.close();
-            System.out.println("Successfully created cryptogram\n");
-            Menu.mainMenu();
+        boolean binary = CryptoFile.writeBinary();
+        boolean created = false;
+        try (FileChannel in = FileChannel.open(selected.toPath(), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(cryptogram.toPath(), StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            if (binary) {
+                CryptoFile.writeHeader(out, CryptoFile.ELLIPTIC);
+                CryptoFile.writePoint(out, Z);
+            } else {
+                Functions.writeFully(out, ByteBuffer.wrap((Z.getX() + "\n" + Z.getY() + "\n")
+                        .getBytes(StandardCharsets.US_ASCII)));
+            }
+            CryptoFile.encryptBody(in, out, cipher, binary);
+            created = true;
         } catch (IOException e) {
             System.out.println("Could not print to that file, returning to menu\n");
-            Menu.mainMenu();
         }
+        if (created) {
+            System.out.println("Successfully created cryptogram\n");
+        }
+        Menu.mainMenu();
     }
 
     /**
@@ -158,23 +150,9 @@ public class PartTwoFunctionality {
         //File Selection
         System.out.println("Select cryptogram file to decrypt");
         File selected = Functions.selectFile();
-        Scanner fileScanner = null;
-        try {
-            assert selected != null;
-            fileScanner = new Scanner(selected);
-        } catch (FileNotFoundException e) {
-            System.out.println("File not found returning to menu\n");
-            Menu.mainMenu();
-        }
-
-        //Convert Zct to variables
-        assert fileScanner != null;
-        BigInteger zX = new BigInteger(fileScanner.next());
-        BigInteger zY = new BigInteger(fileScanner.next());
-        EllipticPoint Z = new EllipticPoint(zX,zY);
-        byte[] cBytes = Functions.hexStringToByteArray(fileScanner.next());
-        byte[] tBytes = Functions.hexStringToByteArray(fileScanner.next());
-
+        assert selected != null;
+        String fileNameWithOutExt = selected.getName().replaceFirst("[.][^.]+$", "");
+        File decoded = new File(fileNameWithOutExt + ".decodedECC");
 
         //s <- KMACXOF256(pw, “”, 512, “K”)
         byte[] sPositive = new byte[65];
@@ -184,46 +162,70 @@ public class PartTwoFunctionality {
 
         //s <- 4s
         BigInteger s = BigInteger.valueOf(4).multiply(new BigInteger(sPositive));
-        //W <- s * Z
-        EllipticPoint W = EllipticPoint.scale(s, Z);
 
-        //(ke || ka) <- KMACXOF256(Wx, “”, 1024, “P”)
-        byte[] kellka = kmacED.KMACXOF256(W.getX().toByteArray(),
-                "".getBytes(), 1024, "P".getBytes());
-
-        //m <- KMACXOF256(ke, “”, |c|, “PKE”) XOR c
-        byte[] ke = Arrays.copyOfRange(kellka, 0,64);
-        byte[] mPartOne  = kmacED.KMACXOF256(ke, "".getBytes(),
-                (cBytes.length * 8), "PKE".getBytes());
+        boolean accepted = false;
+        Path partial = null;
+        try (FileChannel in = FileChannel.open(selected.toPath(), StandardOpenOption.READ)) {
+            //Convert Zct to variables
+            EllipticPoint Z;
+            byte[] tBytes;
+            long cStart;
+            long cEnd;
+            boolean hex = CryptoFile.type(in) < 0;
+            if (!hex) {
+                //Binary layout is header, Z, c, t
+                CryptoFile.Reader reader = new CryptoFile.Reader(in, CryptoFile.ELLIPTIC);
+                Z = reader.point();
+                cStart = reader.skipRaw();
+                cEnd = reader.position();
+                tBytes = reader.field();
+            } else {
+                //Legacy layout is Zx “\n” Zy “\n” hex(c) “\n” hex(t)
+                CryptoFile.LegacyText text = new CryptoFile.LegacyText(in, 2, 64);
+                BigInteger zX = new BigInteger(text.leading[0]);
+                BigInteger zY = new BigInteger(text.leading[1]);
+                Z = new EllipticPoint(zX,zY);
+                cStart = text.cStart;
+                cEnd = text.cEnd;
+                tBytes = text.t;
+            }
 
-        byte[] m = new byte[cBytes.length];
-        for (int j = 0; j < cBytes.length; j++) {
-            m[j] =  (byte)(mPartOne[j] ^ cBytes[j]);
-        }
+            //W <- s * Z
+            EllipticPoint W = EllipticPoint.scale(s, Z);
+
+            //(ke || ka) <- KMACXOF256(Wx, “”, 1024, “P”)
+            byte[] kellka = kmacED.KMACXOF256(W.getX().toByteArray(),
+                    "".getBytes(), 1024, "P".getBytes());
+            byte[] ke = Arrays.copyOfRange(kellka, 0,64);
+            byte[] ka = Arrays.copyOfRange(kellka, 64,128);
+
+            //m <- KMACXOF256(ke, “”, |c|, “PKE”) XOR c and t’ <- KMACXOF256(ka, m, 512, “PKA”),
+            //computed together one chunk of c at a time
+            StreamCipher cipher = new StreamCipher(ke, ka, "PKE".getBytes(), "PKA".getBytes(), false);
+            partial = Files.createTempFile(decoded.getAbsoluteFile().toPath().getParent(),
+                    fileNameWithOutExt, ".partial");
+            try (FileChannel out = FileChannel.open(partial, StandardOpenOption.WRITE)) {
+                CryptoFile.decryptBody(in, cStart, cEnd, hex, cipher, out);
+            }
 
-        //t’ <- KMACXOF256(ka, m, 512, “PKA”)
-        byte[] ka = Arrays.copyOfRange(kellka, 64,128);
-        byte[] tPrime  = kmacED.KMACXOF256(ka, m, 512, "PKA".getBytes());
-
-        //Output condition
-        if (Arrays.equals(tPrime, tBytes)) {
-            //Output
-            String fileNameWithOutExt = selected.getName().replaceFirst("[.][^.]+$", "");
-            File cryptogram = new File(fileNameWithOutExt + ".decodedECC");
-            try {
-                FileWriter myWriter = new FileWriter(cryptogram);
-                myWriter.write((new String(m, StandardCharsets.UTF_8)));
-                myWriter.close();
-                System.out.println("Successfully decoded cryptogram\n");
-                Menu.mainMenu();
-            } catch (IOException e) {
-                System.out.println("Could not print to that file, returning to menu\n");
-                Menu.mainMenu();
+            //Output condition
+            if (Arrays.equals(cipher.tag(), tBytes)) {
+                Files.move(partial, decoded.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                accepted = true;
+            } else {
+                Files.delete(partial);
+                System.out.println("Mismatch detected, NOT ACCEPTED\n");
             }
-        } else {
-            System.out.println("Mismatch detected, NOT ACCEPTED\n");
-            Menu.mainMenu();
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Could not read that cryptogram, returning to menu\n");
+            if (partial != null) {
+                partial.toFile().delete();
+            }
+        }
+        if (accepted) {
+            System.out.println("Successfully decoded cryptogram\n");
         }
+        Menu.mainMenu();
     }
 
     /**
@@ -242,16 +244,8 @@ public class PartTwoFunctionality {
         //File Selection
         System.out.println("Select a file to generate a signature for");
         File selected = Functions.selectFile();
+        assert selected != null;
 
-        //Convert file input to byte array
-        byte[] m = null;
-        try {
-            assert selected != null;
-            m = Files.readAllBytes(selected.toPath());
-        } catch (IOException e) {
-            System.out.println("Could not read from file\n");
-            Menu.mainMenu();
-        }
         //s <- KMACXOF256(pw, “”, 512, “K”)
         byte[] sPos = new byte[65];
         byte[] sPartOne = kmacSG.KMACXOF256(pass.getBytes(), "".getBytes(),
@@ -259,107 +253,109 @@ public class PartTwoFunctionality {
         System.arraycopy(sPartOne, 0, sPos, 1, 64);
         //s <- 4s
         BigInteger s = BigInteger.valueOf(4).multiply(new BigInteger(sPos));
-        //k <- KMACXOF256(s, m, 512, “N”)
+        //k <- KMACXOF256(s, m, 512, “N”), with m streamed from the file
         byte[] kPos = new byte[65];
-        byte[] kPartOne = kmacSG.KMACXOF256(s.toByteArray(), m, 512, "N".getBytes());
+        KMACXOF256Stream kStream = new KMACXOF256Stream(s.toByteArray(), "N".getBytes());
+        try {
+            Functions.absorbFile(kStream, selected);
+        } catch (IOException e) {
+            System.out.println("Could not read from file\n");
+            Menu.mainMenu();
+        }
+        byte[] kPartOne = kStream.finish(512);
         System.arraycopy(kPartOne, 0, kPos, 1, 64);
         //k <- 4k
         BigInteger k = BigInteger.valueOf(4).multiply(new BigInteger(kPos));
-        //Initialize G
-        EllipticPoint G = new EllipticPoint(BigInteger.valueOf(4), false);
         //U <- k*G;
-        EllipticPoint U = EllipticPoint.scale(k,G);
+        EllipticPoint U = EllipticPoint.scaleG(k);
 
-        //h <- KMACXOF256(Ux, m, 512, “T”)
+        //h <- KMACXOF256(Ux, m, 512, “T”), streaming the file a second time now that U is known
         byte[] hPos = new byte[65];
-        byte[] h = kmacSG.KMACXOF256(U.getX().toByteArray(), m, 512, "T".getBytes());
+        KMACXOF256Stream hStream = new KMACXOF256Stream(U.getX().toByteArray(), "T".getBytes());
+        try {
+            Functions.absorbFile(hStream, selected);
+        } catch (IOException e) {
+            System.out.println("Could not read from file\n");
+            Menu.mainMenu();
+        }
+        byte[] h = hStream.finish(512);
         System.arraycopy(h, 0, hPos, 1, 64);
         //z <- (k – hs) mod r
-        BigInteger rPartOne = new BigInteger("2").pow(519);
-        BigInteger rPartTwo = new BigInteger("337554763258501705789107630418782636071904961214051226618635150085779108655765");
-        BigInteger r = rPartOne.subtract(rPartTwo);
-        BigInteger z = (k.subtract(new BigInteger(hPos).multiply(s))).mod(r);
+        BigInteger z = (k.subtract(new BigInteger(hPos).multiply(s))).mod(EllipticPoint.r);
 
-        //Output
+        //Output, binary h, z or legacy hex(h) “\n” z
         String fileNameWithOutExt = selected.getName().replaceFirst("[.][^.]+$", "");
         File cryptogram = new File(fileNameWithOutExt + ".signature");
-        try {
-            FileWriter myWriter = new FileWriter(cryptogram);
-            myWriter.write(Functions.bytesToHex(h) + "\n");
-            myWriter.write(z.toString());
-            myWriter.close();
-            System.out.println("Successfully created signature file\n");
-            Menu.mainMenu();
+        boolean created = false;
+        try (FileChannel out = FileChannel.open(cryptogram.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            if (CryptoFile.writeBinary()) {
+                CryptoFile.writeHeader(out, CryptoFile.SIGNATURE);
+                CryptoFile.writeField(out, h);
+                CryptoFile.writeField(out, z.toByteArray());
+            } else {
+                Functions.writeFully(out, ByteBuffer.wrap((Functions.bytesToHex(h) + "\n" + z)
+                        .getBytes(StandardCharsets.US_ASCII)));
+            }
+            created = true;
         } catch (IOException e) {
             System.out.println("Could not print to that file, returning to menu\n");
-            Menu.mainMenu();
         }
-
+        if (created) {
+            System.out.println("Successfully created signature file\n");
+        }
+        Menu.mainMenu();
     }
 
     /**
      * Method to verify a signature for a file under a public key
      */
     public static void verifySig() {
-        KMACXOF256 kmacVS = new KMACXOF256();
         //Select file to be verified
         System.out.println("Select a file to try and verify");
         File fileToVer = Functions.selectFile();
-        //Convert file input to byte array
-        byte[] m = null;
-        try {
-            assert fileToVer != null;
-            m = Files.readAllBytes(fileToVer.toPath());
-        } catch (IOException e) {
-            System.out.println("Could not read from file");
-            Menu.mainMenu();
-        }
+        assert fileToVer != null;
 
         //Select public key file
         System.out.println("Select public key file");
         File pubKey = Functions.selectFile();
-        BigInteger xComp = null;
-        BigInteger yComp = null;
+        KeyRing.Entry V = null;
         try {
-            Scanner scan = new Scanner(pubKey);
-            xComp = new BigInteger(scan.nextLine());
-            yComp = new BigInteger(scan.nextLine());
-        } catch (FileNotFoundException e) {
+            V = KeyRing.get(pubKey);
+        } catch (IOException e) {
             System.out.println("Error reading file\n");
             Menu.mainMenu();
         }
-
-        assert xComp != null;
-        EllipticPoint V = new EllipticPoint(xComp,yComp);
+        assert V != null;
 
         //Select signature file
         System.out.println("Select signature file\n");
         File sigFile = Functions.selectFile();
-        byte[] h = null;
-        BigInteger z = null;
-
+        Signature signature = null;
         try {
-            Scanner sigRead = new Scanner(sigFile);
-            h = Functions.hexStringToByteArray(sigRead.nextLine());
-            z = sigRead.nextBigInteger();
-        } catch (FileNotFoundException e) {
+            signature = readSignature(sigFile);
+        } catch (IOException e) {
             System.out.println("Error reading file");
             Menu.mainMenu();
         }
-        //Initialize G
-        EllipticPoint G = new EllipticPoint(BigInteger.valueOf(4), false);
-        //U <- z*G + h*V
-        EllipticPoint zG = EllipticPoint.scale(z, G);
+        assert signature != null;
+        byte[] h = signature.h;
+        BigInteger z = signature.z;
+        //U <- z*G + h*V, sharing one chain of doublings
         byte[] hPos = new byte[65];
         System.arraycopy(h, 0, hPos, 1, 64);
+        EllipticPoint U = V.scaleG(z, new BigInteger(hPos)).toAffine();
 
-        EllipticPoint hV = EllipticPoint.scale(new BigInteger(hPos), V);
-        EllipticPoint U = zG.sum(hV);
 
-
-        //accept if, and only if, KMACXOF256(Ux, m, 512, “T”) = h
-        byte[] hCompare = kmacVS.KMACXOF256(U.getX().toByteArray(), m,
-                512, "T".getBytes());
+        //accept if, and only if, KMACXOF256(Ux, m, 512, “T”) = h, with m streamed from the file
+        KMACXOF256Stream kmacVS = new KMACXOF256Stream(U.getX().toByteArray(), "T".getBytes());
+        try {
+            Functions.absorbFile(kmacVS, fileToVer);
+        } catch (IOException e) {
+            System.out.println("Could not read from file");
+            Menu.mainMenu();
+        }
+        byte[] hCompare = kmacVS.finish(512);
 
         if (Arrays.equals(h, hCompare)) {
             System.out.println("Accepted\n");
@@ -370,4 +366,114 @@ public class PartTwoFunctionality {
         }
     }
 
+    /**
+     * Method to verify many signatures at once, from a list file naming a
+     * message file, signature file and public key file on every line
+     */
+    public static void batchVerifySig() {
+        //Select the list file
+        System.out.println("Select a list file of message, signature and public key files");
+        File listFile = Functions.selectFile();
+        assert listFile != null;
+
+        List<SignatureBatch.Item> items = null;
+        try {
+            items = SignatureBatch.readList(listFile);
+        } catch (IOException e) {
+            System.out.println("Error reading list file, returning to menu\n");
+            Menu.mainMenu();
+        }
+        assert items != null;
+        boolean[] accepted = SignatureBatch.verify(items);
+
+        int acceptedCount = 0;
+        for (int i = 0; i < accepted.length; i++) {
+            System.out.println((accepted[i] ? "Accepted: " : "Not Accepted: ") + items.get(i).message);
+            if (accepted[i]) {
+                acceptedCount++;
+            }
+        }
+        System.out.println(acceptedCount + " of " + accepted.length + " signatures accepted\n");
+        Menu.mainMenu();
+    }
+
+    /**
+     * Read a public key file, binary or legacy decimal text, see KeyRing
+     * @param in the public key file, left open for the caller to close
+     * @return the public key V
+     * @throws IOException if the file cannot be read or is not a public key
+     */
+    static EllipticPoint readPublicKey(FileChannel in) throws IOException {
+        if (CryptoFile.type(in) >= 0) {
+            CryptoFile.Reader reader = new CryptoFile.Reader(in, CryptoFile.PUBLIC_KEY);
+            return reader.point();
+        }
+        //Not closed here: closing the Scanner would close the caller's channel
+        Scanner scan = new Scanner(Channels.newInputStream(in.position(0)), StandardCharsets.US_ASCII);
+        try {
+            BigInteger xComp = new BigInteger(scan.nextLine());
+            BigInteger yComp = new BigInteger(scan.nextLine());
+            return new EllipticPoint(xComp, yComp);
+        } catch (RuntimeException e) {
+            throw new IOException("Not a public key file", e);
+        }
+    }
+
+    /**
+     * Read a signature file, binary or legacy hex text
+     * @param file the signature file
+     * @return the signature (h, z)
+     * @throws IOException if the file cannot be read or is not a signature
+     */
+    static Signature readSignature(File file) throws IOException {
+        byte[] h;
+        BigInteger z;
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (CryptoFile.type(in) >= 0) {
+                CryptoFile.Reader reader = new CryptoFile.Reader(in, CryptoFile.SIGNATURE);
+                h = reader.field();
+                byte[] zBytes = reader.field();
+                //new BigInteger rejects an empty array with a NumberFormatException
+                if (zBytes.length == 0) {
+                    throw new IOException("Not a signature file");
+                }
+                z = new BigInteger(zBytes);
+                return checkSignature(h, z);
+            }
+        }
+        try (Scanner sigRead = new Scanner(file)) {
+            h = Functions.hexStringToByteArray(sigRead.nextLine());
+            z = sigRead.nextBigInteger();
+        } catch (RuntimeException e) {
+            throw new IOException("Not a signature file", e);
+        }
+        return checkSignature(h, z);
+    }
+
+    /**
+     * Check the fields of a signature read from a file
+     * @param h the hash, which verifySig and SignatureBatch use as exactly 64 bytes
+     * @param z the scalar
+     * @return the signature (h, z)
+     * @throws IOException if h is not 64 bytes long
+     */
+    private static Signature checkSignature(byte[] h, BigInteger z) throws IOException {
+        if (h.length != 64) {
+            throw new IOException("Not a signature file");
+        }
+        return new Signature(h, z);
+    }
+
+    /**
+     * A Schnorr signature (h, z)
+     */
+    static final class Signature {
+        final byte[] h;
+        final BigInteger z;
+
+        Signature(byte[] h, BigInteger z) {
+            this.h = h;
+            this.z = z;
+        }
+    }
 }
@@ -1,5 +1,10 @@
 //All methods derived from https://github.com/mjosaarinen/tiny_sha3/blob/master/sha3.c
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 /**
  * Sha3 Implementation used for SHAKE to enable CSHAKE and KMAC
  * @Author Markku-Juhani O. Saarinen <mjos@iki.fi>
@@ -10,13 +15,17 @@ public class Sha3 {
     //Rounds
     private static final int KECCAK_ROUNDS = 24;
 
-    //State context
-    private byte[] b = new byte[200];
+    //State context, kept as 25 little-endian 64-bit lanes for the life of the context
+    private final long[] s = new long[25];
 
     private int pt;
     private int rsiz;
     private int mdlen;
 
+    //View of a byte[] as little-endian longs, for moving whole lanes in and out of the state
+    private static final VarHandle LE_LONG =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
     private static final long[] KECCAK_RNDC = {0x0000000000000001L, 0x0000000000008082L, 0x800000000000808AL,
             0x8000000080008000L, 0x000000000000808BL, 0x0000000080000001L, 0x8000000080008081L,
             0x8000000000008009L, 0x000000000000008AL, 0x0000000000000088L, 0x0000000080008009L,
@@ -26,87 +35,221 @@ public class Sha3 {
             0x8000000080008008L};
 
 
-    private static final int[] KECCAKF_ROTC = {1, 3, 6, 10, 15, 21, 28, 36, 45, 55, 2, 14,
-            27, 41, 56, 8, 25, 43, 62, 18, 39, 61, 20, 44};
-
-    private static final int[] KECCAKF_PILN = {
-            10, 7, 11, 17, 18, 3, 5, 16, 8, 21, 24, 4, 15, 23, 19, 13, 12, 2, 20, 14, 22, 9, 6, 1};
-
+    /**
+     * Empty context, to be set up with sha3_init
+     */
+    public Sha3() {
+    }
 
     /**
-     * KECCAK-f
-     * @param st state
+     * Snapshot of another context, including its position in the current block.
+     * The two contexts evolve independently afterwards.
+     * @param other the context to copy
      */
-    private static void sha3_keccakf(byte[] st) {
-        int byteShift = 0;
-        long[] q = new long[25];
-        //Byte to long conversion from office hour discussion
-        for (int i = 0; i < 25; i++) {
-            q[i] =  ((long) st[byteShift] & 0xFFL) |
-                    (((long) st[byteShift + 1] & 0xFFL) << 8) |
-                    (((long) st[byteShift + 2] & 0xFFL) << 16) |
-                    (((long) st[byteShift + 3] & 0xFFL) << 24) |
-                    (((long) st[byteShift + 4] & 0xFFL) << 32) |
-                    (((long) st[byteShift + 5] & 0xFFL) << 40) |
-                    (((long) st[byteShift + 6] & 0xFFL) << 48) |
-                    (((long) st[byteShift + 7] & 0xFFL) << 56);
-            byteShift += 8;
-        }
-        long[] bc = new long[5];
-        long t = 0L;
+    public Sha3(Sha3 other) {
+        System.arraycopy(other.s, 0, this.s, 0, this.s.length);
+        this.pt = other.pt;
+        this.rsiz = other.rsiz;
+        this.mdlen = other.mdlen;
+    }
 
-        //Iteration
-        for (int r = 0; r < KECCAK_ROUNDS; r++) {
+    /**
+     * KECCAK-f, unrolled by lane and two rounds per iteration so that the
+     * JIT can keep the whole state in registers. The lanes
+     * be, bi, go, ki, mi and sa are carried complemented between rounds,
+     * which turns most of the NOTs in chi into ORs (the "lane complementing"
+     * transform from the Keccak implementation overview).
+     * Fully unrolling all 24 rounds would push the method past the JIT's
+     * HugeMethodLimit, so it is left as a 12-iteration loop.
+     * @param q state lanes, permuted in place
+     */
+    //Round structure and complementing pattern follow KeccakP-1600-64.macros in XKCP
+    private static void sha3_keccakf(long[] q) {
+        long aba = q[0];
+        long abe = ~q[1];
+        long abi = ~q[2];
+        long abo = q[3];
+        long abu = q[4];
+        long aga = q[5];
+        long age = q[6];
+        long agi = q[7];
+        long ago = ~q[8];
+        long agu = q[9];
+        long aka = q[10];
+        long ake = q[11];
+        long aki = ~q[12];
+        long ako = q[13];
+        long aku = q[14];
+        long ama = q[15];
+        long ame = q[16];
+        long ami = ~q[17];
+        long amo = q[18];
+        long amu = q[19];
+        long asa = ~q[20];
+        long ase = q[21];
+        long asi = q[22];
+        long aso = q[23];
+        long asu = q[24];
+        long eba, ebe, ebi, ebo, ebu, ega, ege, egi, ego, egu, eka, eke, eki,
+                eko, eku, ema, eme, emi, emo, emu, esa, ese, esi, eso, esu;
+        long c0, c1, c2, c3, c4, d0, d1, d2, d3, d4, b0, b1, b2, b3, b4;
 
+        //Iteration, rounds r (a to e) and r + 1 (e back to a)
+        for (int r = 0; r < KECCAK_ROUNDS; r += 2) {
             //Theta
-            for (int i = 0; i < 5; i++) {
-                bc[i] = q[i] ^ q[i + 5] ^ q[i + 10]
-                        ^ q[i + 15] ^ q[i + 20];
-            }
-
-            for (int i = 0; i < 5; i++) {
-                t = bc[(i + 4) % 5] ^ ROTL64(bc[(i + 1) % 5], 1);
-                for (int j = 0; j < 25; j += 5) {
-                    q[j + i] ^= t;
-                }
-            }
-
-            //Rho Pi
-            t = q[1];
-            for (int i = 0; i < 24; i++) {
-                int j = KECCAKF_PILN[i];
-                bc[0] = q[j];
-                q[j] = ROTL64(t, KECCAKF_ROTC[i]);
-                t = bc[0];
-            }
-
-            //Chi
-            for (int j = 0; j < 25; j += 5) {
-                for (int i = 0; i < 5; i++) {
-                    bc[i] = q[j + i];
-                }
-                for (int i = 0; i < 5; i++) {
-                    q[j + i] ^= (~bc[(i + 1) % 5]) & bc[(i + 2) % 5];
-                }
-            }
+            c0 = aba ^ aga ^ aka ^ ama ^ asa;
+            c1 = abe ^ age ^ ake ^ ame ^ ase;
+            c2 = abi ^ agi ^ aki ^ ami ^ asi;
+            c3 = abo ^ ago ^ ako ^ amo ^ aso;
+            c4 = abu ^ agu ^ aku ^ amu ^ asu;
+            d0 = c4 ^ ROTL64(c1, 1);
+            d1 = c0 ^ ROTL64(c2, 1);
+            d2 = c1 ^ ROTL64(c3, 1);
+            d3 = c2 ^ ROTL64(c4, 1);
+            d4 = c3 ^ ROTL64(c0, 1);
+            //Rho Pi Chi, one output row at a time
+            b0 = aba ^ d0;
+            b1 = ROTL64(age ^ d1, 44);
+            b2 = ROTL64(aki ^ d2, 43);
+            b3 = ROTL64(amo ^ d3, 21);
+            b4 = ROTL64(asu ^ d4, 14);
+            eba = b0 ^ (b1 | b2);
+            ebe = b1 ^ ((~b2) | b3);
+            ebi = b2 ^ (b3 & b4);
+            ebo = b3 ^ (b4 | b0);
+            ebu = b4 ^ (b0 & b1);
+            eba ^= KECCAK_RNDC[r];
+            b0 = ROTL64(abo ^ d3, 28);
+            b1 = ROTL64(agu ^ d4, 20);
+            b2 = ROTL64(aka ^ d0, 3);
+            b3 = ROTL64(ame ^ d1, 45);
+            b4 = ROTL64(asi ^ d2, 61);
+            ega = b0 ^ (b1 | b2);
+            ege = b1 ^ (b2 & b3);
+            egi = b2 ^ (b3 | (~b4));
+            ego = b3 ^ (b4 | b0);
+            egu = b4 ^ (b0 & b1);
+            b0 = ROTL64(abe ^ d1, 1);
+            b1 = ROTL64(agi ^ d2, 6);
+            b2 = ROTL64(ako ^ d3, 25);
+            b3 = ROTL64(amu ^ d4, 8);
+            b4 = ROTL64(asa ^ d0, 18);
+            eka = b0 ^ (b1 | b2);
+            eke = b1 ^ (b2 & b3);
+            eki = b2 ^ ((~b3) & b4);
+            eko = (~b3) ^ (b4 | b0);
+            eku = b4 ^ (b0 & b1);
+            b0 = ROTL64(abu ^ d4, 27);
+            b1 = ROTL64(aga ^ d0, 36);
+            b2 = ROTL64(ake ^ d1, 10);
+            b3 = ROTL64(ami ^ d2, 15);
+            b4 = ROTL64(aso ^ d3, 56);
+            ema = b0 ^ (b1 & b2);
+            eme = b1 ^ (b2 | b3);
+            emi = b2 ^ ((~b3) | b4);
+            emo = (~b3) ^ (b4 & b0);
+            emu = b4 ^ (b0 | b1);
+            b0 = ROTL64(abi ^ d2, 62);
+            b1 = ROTL64(ago ^ d3, 55);
+            b2 = ROTL64(aku ^ d4, 39);
+            b3 = ROTL64(ama ^ d0, 41);
+            b4 = ROTL64(ase ^ d1, 2);
+            esa = b0 ^ ((~b1) & b2);
+            ese = (~b1) ^ (b2 | b3);
+            esi = b2 ^ (b3 & b4);
+            eso = b3 ^ (b4 | b0);
+            esu = b4 ^ (b0 & b1);
 
-            //Iota
-            q[0] ^= KECCAK_RNDC[r];
-        }
-        byteShift = 0;
-        //Long to byte conversion from office hour discussion
-        for (int i = 0; i < 25; i++) {
-            long currentLong = q[i];
-            st[0 + byteShift] = (byte) (currentLong & 0xFFL);
-            st[1 + byteShift] = (byte) ((currentLong >> 8) & 0xFFL);
-            st[2 + byteShift] = (byte) ((currentLong >> 16) & 0xFFL);
-            st[3 + byteShift] = (byte) ((currentLong >> 24) & 0xFFL);
-            st[4 + byteShift] = (byte) ((currentLong >> 32) & 0xFFL);
-            st[5 + byteShift] = (byte) ((currentLong >> 40) & 0xFFL);
-            st[6 + byteShift] = (byte) ((currentLong >> 48) & 0xFFL);
-            st[7 + byteShift] = (byte) ((currentLong >> 56) & 0xFFL);
-            byteShift = byteShift + 8;
+            //Theta
+            c0 = eba ^ ega ^ eka ^ ema ^ esa;
+            c1 = ebe ^ ege ^ eke ^ eme ^ ese;
+            c2 = ebi ^ egi ^ eki ^ emi ^ esi;
+            c3 = ebo ^ ego ^ eko ^ emo ^ eso;
+            c4 = ebu ^ egu ^ eku ^ emu ^ esu;
+            d0 = c4 ^ ROTL64(c1, 1);
+            d1 = c0 ^ ROTL64(c2, 1);
+            d2 = c1 ^ ROTL64(c3, 1);
+            d3 = c2 ^ ROTL64(c4, 1);
+            d4 = c3 ^ ROTL64(c0, 1);
+            //Rho Pi Chi, one output row at a time
+            b0 = eba ^ d0;
+            b1 = ROTL64(ege ^ d1, 44);
+            b2 = ROTL64(eki ^ d2, 43);
+            b3 = ROTL64(emo ^ d3, 21);
+            b4 = ROTL64(esu ^ d4, 14);
+            aba = b0 ^ (b1 | b2);
+            abe = b1 ^ ((~b2) | b3);
+            abi = b2 ^ (b3 & b4);
+            abo = b3 ^ (b4 | b0);
+            abu = b4 ^ (b0 & b1);
+            aba ^= KECCAK_RNDC[r + 1];
+            b0 = ROTL64(ebo ^ d3, 28);
+            b1 = ROTL64(egu ^ d4, 20);
+            b2 = ROTL64(eka ^ d0, 3);
+            b3 = ROTL64(eme ^ d1, 45);
+            b4 = ROTL64(esi ^ d2, 61);
+            aga = b0 ^ (b1 | b2);
+            age = b1 ^ (b2 & b3);
+            agi = b2 ^ (b3 | (~b4));
+            ago = b3 ^ (b4 | b0);
+            agu = b4 ^ (b0 & b1);
+            b0 = ROTL64(ebe ^ d1, 1);
+            b1 = ROTL64(egi ^ d2, 6);
+            b2 = ROTL64(eko ^ d3, 25);
+            b3 = ROTL64(emu ^ d4, 8);
+            b4 = ROTL64(esa ^ d0, 18);
+            aka = b0 ^ (b1 | b2);
+            ake = b1 ^ (b2 & b3);
+            aki = b2 ^ ((~b3) & b4);
+            ako = (~b3) ^ (b4 | b0);
+            aku = b4 ^ (b0 & b1);
+            b0 = ROTL64(ebu ^ d4, 27);
+            b1 = ROTL64(ega ^ d0, 36);
+            b2 = ROTL64(eke ^ d1, 10);
+            b3 = ROTL64(emi ^ d2, 15);
+            b4 = ROTL64(eso ^ d3, 56);
+            ama = b0 ^ (b1 & b2);
+            ame = b1 ^ (b2 | b3);
+            ami = b2 ^ ((~b3) | b4);
+            amo = (~b3) ^ (b4 & b0);
+            amu = b4 ^ (b0 | b1);
+            b0 = ROTL64(ebi ^ d2, 62);
+            b1 = ROTL64(ego ^ d3, 55);
+            b2 = ROTL64(eku ^ d4, 39);
+            b3 = ROTL64(ema ^ d0, 41);
+            b4 = ROTL64(ese ^ d1, 2);
+            asa = b0 ^ ((~b1) & b2);
+            ase = (~b1) ^ (b2 | b3);
+            asi = b2 ^ (b3 & b4);
+            aso = b3 ^ (b4 | b0);
+            asu = b4 ^ (b0 & b1);
         }
+
+        q[0] = aba;
+        q[1] = ~abe;
+        q[2] = ~abi;
+        q[3] = abo;
+        q[4] = abu;
+        q[5] = aga;
+        q[6] = age;
+        q[7] = agi;
+        q[8] = ~ago;
+        q[9] = agu;
+        q[10] = aka;
+        q[11] = ake;
+        q[12] = ~aki;
+        q[13] = ako;
+        q[14] = aku;
+        q[15] = ama;
+        q[16] = ame;
+        q[17] = ~ami;
+        q[18] = amo;
+        q[19] = amu;
+        q[20] = ~asa;
+        q[21] = ase;
+        q[22] = asi;
+        q[23] = aso;
+        q[24] = asu;
     }
 
     /**
@@ -135,15 +278,118 @@ public class Sha3 {
      * @param len the length
      */
     public void sha3_update(byte[] data, int len) {
+        sha3_update(data, 0, len);
+    }
+
+    /**
+     * Update SHAKE256 with a slice of the input, absorbing whole rate-sized
+     * blocks a lane at a time and only falling back to single bytes for an
+     * unaligned head or tail.
+     * @param data the input data
+     * @param off offset of the first byte to absorb
+     * @param len the length
+     */
+    public void sha3_update(byte[] data, int off, int len) {
         int j = pt;
-        for (int i = 0; i < len; i++) {
-            b[j++] ^= data[i];
-            if (j >= rsiz) {
-                sha3_keccakf(b);
-                j = 0;
+        int i = off;
+        int end = off + len;
+
+        //Unaligned head, until the state position reaches a lane boundary
+        while (i < end && (j & 7) != 0) {
+            j = absorbByte(data[i++], j);
+        }
+
+        //Whole lanes, and whole blocks whenever the state position is at the start
+        while (end - i >= 8) {
+            if (j == 0 && end - i >= rsiz) {
+                for (int k = 0; k < rsiz >>> 3; k++) {
+                    s[k] ^= (long) LE_LONG.get(data, i + (k << 3));
+                }
+                sha3_keccakf(s);
+                i += rsiz;
+            } else {
+                s[j >>> 3] ^= (long) LE_LONG.get(data, i);
+                i += 8;
+                j += 8;
+                if (j >= rsiz) {
+                    sha3_keccakf(s);
+                    j = 0;
+                }
+            }
+        }
+
+        //Tail
+        while (i < end) {
+            j = absorbByte(data[i++], j);
+        }
+        pt = j;
+    }
+
+    /**
+     * Update SHAKE256 with the remaining bytes of a ByteBuffer (for example a
+     * MappedByteBuffer), reading whole lanes straight from the buffer.
+     * The buffer's position is advanced to its limit.
+     * @param data the input data
+     */
+    public void sha3_update(ByteBuffer data) {
+        if (data.hasArray()) {
+            int len = data.remaining();
+            sha3_update(data.array(), data.arrayOffset() + data.position(), len);
+            data.position(data.position() + len);
+            return;
+        }
+        ByteBuffer in = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int j = pt;
+        int i = in.position();
+        int end = in.limit();
+
+        //Unaligned head, until the state position reaches a lane boundary
+        while (i < end && (j & 7) != 0) {
+            j = absorbByte(in.get(i++), j);
+        }
+
+        //Whole lanes, and whole blocks whenever the state position is at the start
+        while (end - i >= 8) {
+            if (j == 0 && end - i >= rsiz) {
+                for (int k = 0; k < rsiz >>> 3; k++) {
+                    s[k] ^= in.getLong(i + (k << 3));
+                }
+                sha3_keccakf(s);
+                i += rsiz;
+            } else {
+                s[j >>> 3] ^= in.getLong(i);
+                i += 8;
+                j += 8;
+                if (j >= rsiz) {
+                    sha3_keccakf(s);
+                    j = 0;
+                }
             }
         }
+
+        //Tail
+        while (i < end) {
+            j = absorbByte(in.get(i++), j);
+        }
         pt = j;
+        data.position(end);
+    }
+
+    /**
+     * XOR a single byte into the state, permuting once the rate is full
+     * @param in the input byte
+     * @param j current byte position in the state
+     * @return the next byte position in the state
+     */
+    private int absorbByte(byte in, int j) {
+        //Byte j of the state is byte (j % 8) of lane (j / 8)
+        s[j >>> 3] ^= ((long) in & 0xFFL) << ((j & 7) << 3);
+        j++;
+        if (j >= rsiz) {
+            sha3_keccakf(s);
+            j = 0;
+        }
+        return j;
     }
 
     /**
@@ -152,13 +398,10 @@ public class Sha3 {
      */
     public void shake_xof(boolean type) {
         //Shake suffix values https://en.wikipedia.org/wiki/SHA-3
-        if (type) {
-            b[pt] ^= (byte)0x04;
-        } else {
-            b[pt] ^= (byte)0x1F;
-        }
-        b[rsiz - 1] ^= (byte)0x80;
-        sha3_keccakf(b);
+        long suffix = type ? 0x04L : 0x1FL;
+        s[pt >>> 3] ^= suffix << ((pt & 7) << 3);
+        s[(rsiz - 1) >>> 3] ^= 0x80L << (((rsiz - 1) & 7) << 3);
+        sha3_keccakf(s);
         pt = 0;
     }
 
@@ -168,15 +411,192 @@ public class Sha3 {
      * @param len squeezed byte total
      */
     public void shake_out(byte[] out, int len) {
+        shake_out(out, 0, len);
+    }
+
+    /**
+     * Squeeze into a slice of a caller-provided buffer. Repeated calls continue
+     * the output stream, so a caller can pull output in chunks with one buffer.
+     * @param out buffer receiving the output
+     * @param off offset of the first output byte in out
+     * @param len squeezed byte total
+     */
+    public void shake_out(byte[] out, int off, int len) {
         int j = pt;
-        for (int i = 0; i < len; i++) {
-            if(j >= rsiz) {
-                sha3_keccakf(b);
+        int o = off;
+        int end = off + len;
+
+        //Unaligned head, until the state position reaches a lane boundary
+        while (o < end && (j & 7) != 0) {
+            j = squeezeByte(out, o++, j);
+        }
+
+        //Whole lanes, and whole blocks straight after a permutation
+        while (end - o >= 8) {
+            if (j >= rsiz) {
+                sha3_keccakf(s);
                 j = 0;
             }
-            out[i] = b[j++];
+            if (j == 0 && end - o >= rsiz) {
+                for (int k = 0; k < rsiz >>> 3; k++) {
+                    LE_LONG.set(out, o + (k << 3), s[k]);
+                }
+                o += rsiz;
+                j = rsiz;
+            } else {
+                LE_LONG.set(out, o, s[j >>> 3]);
+                o += 8;
+                j += 8;
+            }
         }
 
+        //Tail
+        while (o < end) {
+            j = squeezeByte(out, o++, j);
+        }
+        pt = j;
+    }
+
+    /**
+     * Squeeze into a ByteBuffer, filling it from its position to its limit.
+     * The buffer's position is advanced past the written bytes.
+     * @param dst buffer receiving the output
+     */
+    public void shake_out(ByteBuffer dst) {
+        if (dst.hasArray()) {
+            int len = dst.remaining();
+            shake_out(dst.array(), dst.arrayOffset() + dst.position(), len);
+            dst.position(dst.position() + len);
+            return;
+        }
+        ByteOrder order = dst.order();
+        dst.order(ByteOrder.LITTLE_ENDIAN);
+        int j = pt;
+        while (dst.hasRemaining() && (j & 7) != 0) {
+            dst.put((byte) (s[j >>> 3] >>> ((j & 7) << 3)));
+            j++;
+        }
+        while (dst.remaining() >= 8) {
+            if (j >= rsiz) {
+                sha3_keccakf(s);
+                j = 0;
+            }
+            dst.putLong(s[j >>> 3]);
+            j += 8;
+        }
+        while (dst.hasRemaining()) {
+            if (j >= rsiz) {
+                sha3_keccakf(s);
+                j = 0;
+            }
+            dst.put((byte) (s[j >>> 3] >>> ((j & 7) << 3)));
+            j++;
+        }
+        dst.order(order);
         pt = j;
     }
+
+    /**
+     * Check if xorSqueezeAbsorb can run a squeezing context and an absorbing
+     * context side by side: same rate, and the same byte position in the block
+     * (a squeezing context whose block is used up counts as position 0)
+     * @param keystream the squeezing context
+     * @param mac the absorbing context
+     * @return true if the two contexts line up
+     */
+    static boolean sameBlockPosition(Sha3 keystream, Sha3 mac) {
+        return keystream.rsiz == mac.rsiz && keystream.pt % keystream.rsiz == mac.pt;
+    }
+
+    /**
+     * XOR a slice in place with the output of one context while absorbing the
+     * slice into another, in one pass: each lane of data is loaded once, XORed
+     * with the keystream lane and absorbed before or after the XOR. Produces the
+     * same states and bytes as shake_out into a buffer, an XOR loop and
+     * sha3_update. The contexts must line up, see sameBlockPosition.
+     * @param keystream the squeezing context (already padded)
+     * @param mac the absorbing context
+     * @param data the slice to transform
+     * @param off offset of the first byte
+     * @param len number of bytes
+     * @param absorbInput true to absorb the bytes before the XOR, false to absorb them after
+     */
+    static void xorSqueezeAbsorb(Sha3 keystream, Sha3 mac, byte[] data, int off, int len, boolean absorbInput) {
+        if (len == 0) {
+            return;
+        }
+        long[] ks = keystream.s;
+        long[] ms = mac.s;
+        int rate = mac.rsiz;
+        int j = mac.pt;
+        if (keystream.pt >= rate) {
+            sha3_keccakf(ks);
+        }
+        int i = off;
+        int end = off + len;
+        while (true) {
+            if (j == 0 && end - i >= rate) {
+                //Whole block
+                for (int k = 0; k < rate >>> 3; k++) {
+                    int p = i + (k << 3);
+                    long x = (long) LE_LONG.get(data, p);
+                    long c = x ^ ks[k];
+                    ms[k] ^= absorbInput ? x : c;
+                    LE_LONG.set(data, p, c);
+                }
+                i += rate;
+                j = rate;
+            } else if ((j & 7) == 0 && end - i >= 8) {
+                //Whole lane
+                int lane = j >>> 3;
+                long x = (long) LE_LONG.get(data, i);
+                long c = x ^ ks[lane];
+                ms[lane] ^= absorbInput ? x : c;
+                LE_LONG.set(data, i, c);
+                i += 8;
+                j += 8;
+            } else {
+                //Single byte of an unaligned head or a tail
+                int lane = j >>> 3;
+                int shift = (j & 7) << 3;
+                byte x = data[i];
+                byte c = (byte) (x ^ (ks[lane] >>> shift));
+                ms[lane] ^= ((long) (absorbInput ? x : c) & 0xFFL) << shift;
+                data[i++] = c;
+                j++;
+            }
+            if (j == rate) {
+                //Absorbing permutes as soon as the block is full, squeezing only once more output is needed
+                sha3_keccakf(ms);
+                if (i == end) {
+                    keystream.pt = rate;
+                    mac.pt = 0;
+                    return;
+                }
+                sha3_keccakf(ks);
+                j = 0;
+            }
+            if (i == end) {
+                keystream.pt = j;
+                mac.pt = j;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Copy a single byte of the state out, permuting first if the rate is used up
+     * @param out buffer receiving the output
+     * @param o position in out
+     * @param j current byte position in the state
+     * @return the next byte position in the state
+     */
+    private int squeezeByte(byte[] out, int o, int j) {
+        if (j >= rsiz) {
+            sha3_keccakf(s);
+            j = 0;
+        }
+        out[o] = (byte) (s[j >>> 3] >>> ((j & 7) << 3));
+        return j + 1;
+    }
 }
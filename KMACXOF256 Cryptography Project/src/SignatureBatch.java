@@ -0,0 +1,216 @@
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Batch verification of the Schnorr signatures made by signatureGen over
+ * many (message file, signature file, public key file) triples. Every item
+ * gets the same verdict verifySig would give it, but the batch:
+ * <ul>
+ * <li>takes each distinct public key, with its tables, from the KeyRing,</li>
+ * <li>computes U = z*G + h*V for all items on the common ForkJoinPool,
+ * leaving each in extended coordinates,</li>
+ * <li>converts every U to affine with a single field inversion, and</li>
+ * <li>hashes the messages, KMACXOF256(Ux, m, 512, “T”), in parallel.</li>
+ * </ul>
+ * A signature holds only (h, z), not U, so the verification equation can
+ * only be checked through the hash of each message. Random linear
+ * combinations of the group equations need U and do not apply, and every
+ * verdict is already per item, so a failing item never hides the others.
+ * @author Ethan Nesel
+ */
+public class SignatureBatch {
+    /**
+     * Items below which a task stops splitting and works sequentially
+     */
+    private static final int SEQUENTIAL_ITEMS = 4;
+
+    /**
+     * One (message, signature, public key) triple
+     */
+    public static final class Item {
+        final File message;
+        final File signature;
+        final File publicKey;
+
+        /**
+         * @param message the signed file
+         * @param signature its signature file
+         * @param publicKey the public key file of the signer
+         */
+        public Item(File message, File signature, File publicKey) {
+            this.message = message;
+            this.signature = signature;
+            this.publicKey = publicKey;
+        }
+    }
+
+    /**
+     * Verify every item of a batch
+     * @param items the triples to verify
+     * @return for each item, in order, true if the signature is accepted; items
+     *         whose files cannot be read are not accepted
+     */
+    public static boolean[] verify(List<Item> items) {
+        int count = items.size();
+        //Each distinct key file is looked up once for the whole batch
+        Map<File, KeyRing.Entry> distinct = new HashMap<>();
+        KeyRing.Entry[] keys = new KeyRing.Entry[count];
+        for (int i = 0; i < count; i++) {
+            File key = items.get(i).publicKey.getAbsoluteFile();
+            if (!distinct.containsKey(key)) {
+                KeyRing.Entry entry = null;
+                try {
+                    entry = KeyRing.get(key);
+                    //Build or map the key's tables here, once, rather than in every task
+                    entry.table();
+                } catch (IOException | RuntimeException e) {
+                    //Left null: every item signed under this key is rejected
+                }
+                distinct.put(key, entry);
+            }
+            keys[i] = distinct.get(key);
+        }
+
+        //U <- z*G + h*V, in extended coordinates
+        byte[][] h = new byte[count][];
+        ExtendedPoint[] u = new ExtendedPoint[count];
+        inParallel(count, i -> {
+            if (keys[i] == null) {
+                return;
+            }
+            try {
+                PartTwoFunctionality.Signature signature = PartTwoFunctionality.readSignature(items.get(i).signature);
+                byte[] hPos = new byte[signature.h.length + 1];
+                System.arraycopy(signature.h, 0, hPos, 1, signature.h.length);
+                u[i] = keys[i].scaleG(signature.z, new BigInteger(hPos));
+                h[i] = signature.h;
+            } catch (IOException | RuntimeException e) {
+                //Left null: rejected
+            }
+        });
+
+        //One inversion for every U
+        int valid = 0;
+        for (ExtendedPoint point : u) {
+            if (point != null) {
+                valid++;
+            }
+        }
+        ExtendedPoint[] points = new ExtendedPoint[valid];
+        for (int i = 0, j = 0; i < count; i++) {
+            if (u[i] != null) {
+                points[j++] = u[i];
+            }
+        }
+        EllipticPoint[] affine = ExtendedPoint.toAffine(points);
+        EllipticPoint[] U = new EllipticPoint[count];
+        for (int i = 0, j = 0; i < count; i++) {
+            if (u[i] != null) {
+                U[i] = affine[j++];
+            }
+        }
+
+        //accept if, and only if, KMACXOF256(Ux, m, 512, “T”) = h
+        boolean[] accepted = new boolean[count];
+        inParallel(count, i -> {
+            if (U[i] == null) {
+                return;
+            }
+            KMACXOF256Stream kmac = new KMACXOF256Stream(U[i].getX().toByteArray(), "T".getBytes());
+            try {
+                Functions.absorbFile(kmac, items.get(i).message);
+                accepted[i] = Arrays.equals(h[i], kmac.finish(512));
+            } catch (IOException e) {
+                //Left false: rejected
+            }
+        });
+        return accepted;
+    }
+
+    /**
+     * Read a batch list file. Every line names a message file, its signature
+     * file and the signer's public key file, separated by tabs (or by spaces
+     * when the line has no tab). Relative paths are taken from the list's
+     * directory; blank lines and lines starting with # are skipped.
+     * @param list the list file
+     * @return the items, in file order
+     * @throws IOException if the list cannot be read or a line does not hold three paths
+     */
+    public static List<Item> readList(File list) throws IOException {
+        File directory = list.getAbsoluteFile().getParentFile();
+        List<Item> items = new ArrayList<>();
+        for (String line : Files.readAllLines(list.toPath(), StandardCharsets.UTF_8)) {
+            String trimmed = line.strip();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            String[] paths = trimmed.split(trimmed.indexOf('\t') >= 0 ? "\t+" : " +");
+            if (paths.length != 3) {
+                throw new IOException("Expected three paths on line: " + line);
+            }
+            items.add(new Item(resolve(directory, paths[0]), resolve(directory, paths[1]),
+                    resolve(directory, paths[2])));
+        }
+        return items;
+    }
+
+    /**
+     * Resolve a path from a list file
+     * @param directory the directory of the list file
+     * @param path the path as written
+     * @return the path itself if absolute, otherwise relative to directory
+     */
+    private static File resolve(File directory, String path) {
+        File file = new File(path.strip());
+        return file.isAbsolute() ? file : new File(directory, path.strip());
+    }
+
+    /**
+     * Run an action for every index 0..count-1 on the common ForkJoinPool
+     * @param count number of indices
+     * @param action the action, which must be safe to run concurrently
+     */
+    private static void inParallel(int count, IntConsumer action) {
+        ForkJoinPool.commonPool().invoke(new ItemTask(action, 0, count));
+    }
+
+    /**
+     * Task running an action over a run of indices, splitting the run in half
+     * until it is small enough to work through sequentially
+     */
+    private static final class ItemTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final transient IntConsumer action;
+        private final int from;
+        private final int to;
+
+        ItemTask(IntConsumer action, int from, int to) {
+            this.action = action;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SEQUENTIAL_ITEMS) {
+                for (int i = from; i < to; i++) {
+                    action.accept(i);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ItemTask(action, from, middle), new ItemTask(action, middle, to));
+        }
+    }
+}
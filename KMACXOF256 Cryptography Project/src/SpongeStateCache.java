@@ -0,0 +1,131 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of cSHAKE256 sponge states right after their fixed prefix.
+ * cSHAKE256 always starts by absorbing bytepad(encode_string(N) || encode_string(S), 136)
+ * and KMACXOF256 follows that with bytepad(encode_string(K), 136), so for a repeated
+ * (N, S) or (K, S) the state at that point can be cloned instead of recomputed.
+ * <p>
+ * States after a key are only cached when the caller asks for it: a cached key
+ * stays in the heap until it is evicted, so one-time secrets such as derived
+ * encryption keys must not be cached, and would only push out the keys that
+ * do repeat.
+ * @author Ethan Nesel
+ */
+public class SpongeStateCache {
+    /**
+     * Maximum number of cached states
+     */
+    private static final int CAPACITY = 256;
+    /**
+     * Function name used by KMAC
+     */
+    private static final byte[] KMAC_N = KMACXOF256.KMACString.getBytes(StandardCharsets.UTF_8);
+    /**
+     * Cached states in access order, eldest evicted first
+     */
+    private static final Map<Key, CSHAKE256Stream> STATES = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, CSHAKE256Stream> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    /**
+     * cSHAKE256 state after the (N, S) prefix
+     * @param N a function-name bit string
+     * @param S a customization bit string
+     * @return a fresh copy of the state, ready to absorb the main input
+     */
+    public static CSHAKE256Stream cshake(byte[] N, byte[] S) {
+        Key key = new Key(N, S, null);
+        CSHAKE256Stream state = lookup(key);
+        if (state == null) {
+            state = new CSHAKE256Stream(N, S);
+            store(key, state);
+        }
+        return state.copy();
+    }
+
+    /**
+     * KMACXOF256 state after the (“KMAC”, S) prefix and the encoded key K
+     * @param K a key bit string
+     * @param S an optional customization bit string
+     * @param cacheKey true to cache the state after K as well, for a key that is
+     *                 used again and again; false for a one-time or secret key,
+     *                 which is absorbed into a copy of the (“KMAC”, S) state and
+     *                 never kept
+     * @return a fresh copy of the state, ready to absorb the message
+     */
+    public static CSHAKE256Stream kmac(byte[] K, byte[] S, boolean cacheKey) {
+        if (!cacheKey) {
+            CSHAKE256Stream state = cshake(KMAC_N, S);
+            state.updateBytepad(136, K);
+            return state;
+        }
+        Key key = new Key(KMAC_N, S, K == null ? new byte[0] : K);
+        CSHAKE256Stream state = lookup(key);
+        if (state == null) {
+            state = cshake(KMAC_N, S);
+            state.updateBytepad(136, K);
+            store(key, state);
+        }
+        return state.copy();
+    }
+
+    /**
+     * Look up a cached state
+     * @param key the prefix identity
+     * @return the cached state, or null
+     */
+    private static CSHAKE256Stream lookup(Key key) {
+        synchronized (STATES) {
+            return STATES.get(key);
+        }
+    }
+
+    /**
+     * Add a state to the cache, evicting the least recently used one if full
+     * @param key the prefix identity
+     * @param state the state after the prefix; kept by the cache and only ever copied
+     */
+    private static void store(Key key, CSHAKE256Stream state) {
+        synchronized (STATES) {
+            STATES.put(key, state);
+        }
+    }
+
+    /**
+     * Identity of a prefix: N, S, and the KMAC key if there is one
+     */
+    private static final class Key {
+        private final byte[] n;
+        private final byte[] s;
+        private final byte[] k;
+        private final int hash;
+
+        Key(byte[] N, byte[] S, byte[] K) {
+            this.n = N == null ? new byte[0] : N.clone();
+            this.s = S == null ? new byte[0] : S.clone();
+            this.k = K == null ? null : K.clone();
+            this.hash = 31 * (31 * Arrays.hashCode(n) + Arrays.hashCode(s)) + Arrays.hashCode(k);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return Arrays.equals(n, other.n) && Arrays.equals(s, other.s) && Arrays.equals(k, other.k);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Streaming form of the KMACXOF256 encrypt-then-MAC construction used by the
+ * symmetric and ECDHIES cryptograms: c = KMACXOF256(ke, “”, |m|, E) XOR m and
+ * t = KMACXOF256(ka, m, 512, A). Data is processed one chunk at a time, so a
+ * file of any size only ever needs one I/O buffer of memory.
+ * @author Ethan Nesel
+ */
+public class StreamCipher {
+    /**
+     * Keystream KMACXOF256(ke, “”, ..., E), squeezed as data arrives
+     */
+    private final KMACXOF256Stream keystream;
+    /**
+     * Tag KMACXOF256(ka, m, 512, A), always taken over the plaintext
+     */
+    private final KMACXOF256Stream mac;
+    /**
+     * True to encrypt (input is plaintext), false to decrypt (input is ciphertext)
+     */
+    private final boolean encrypt;
+    /**
+     * Keystream for the current chunk, reused between chunks
+     */
+    private byte[] ks = new byte[0];
+
+    /**
+     * Set up the keystream and tag computations
+     * @param ke the encryption key
+     * @param ka the authentication key
+     * @param encryptS customization string for the keystream (e.g. “SKE”)
+     * @param macS customization string for the tag (e.g. “SKA”)
+     * @param encrypt true to encrypt, false to decrypt
+     */
+    public StreamCipher(byte[] ke, byte[] ka, byte[] encryptS, byte[] macS, boolean encrypt) {
+        this(ke, ka, encryptS, macS, encrypt, new byte[0], new byte[0]);
+    }
+
+    /**
+     * Set up the keystream KMACXOF256(ke, nonce, ..., E) and the tag
+     * KMACXOF256(ka, macPrefix || m, 512, A), for constructions that bind
+     * extra context such as a chunk index into both
+     * @param ke the encryption key
+     * @param ka the authentication key
+     * @param encryptS customization string for the keystream
+     * @param macS customization string for the tag
+     * @param encrypt true to encrypt, false to decrypt
+     * @param nonce the keystream's whole KMAC message
+     * @param macPrefix bytes absorbed into the tag ahead of the plaintext
+     */
+    public StreamCipher(byte[] ke, byte[] ka, byte[] encryptS, byte[] macS, boolean encrypt,
+                        byte[] nonce, byte[] macPrefix) {
+        //The keystream's message is fixed up front, so finish right away and squeeze on demand
+        this.keystream = new KMACXOF256Stream(ke, encryptS);
+        this.keystream.update(nonce);
+        this.keystream.finish(ks, 0, 0);
+        this.mac = new KMACXOF256Stream(ka, macS);
+        this.mac.update(macPrefix);
+        this.encrypt = encrypt;
+    }
+
+    /**
+     * Encrypt or decrypt the next chunk in place, updating the tag
+     * @param data the chunk
+     * @param off offset of the first byte
+     * @param len number of bytes
+     */
+    public void process(byte[] data, int off, int len) {
+        //When both sponges sit at the same spot in their blocks, one pass squeezes, XORs and absorbs lane by lane
+        if (KMACXOF256Stream.xorSqueezeAbsorb(keystream, mac, data, off, len, encrypt)) {
+            return;
+        }
+        if (ks.length < len) {
+            ks = new byte[len];
+        }
+        keystream.squeeze(ks, 0, len);
+        if (encrypt) {
+            mac.update(data, off, len);
+        }
+        for (int j = 0; j < len; j++) {
+            data[off + j] ^= ks[j];
+        }
+        if (!encrypt) {
+            mac.update(data, off, len);
+        }
+    }
+
+    /**
+     * Finish the tag over everything processed so far
+     * @return the 512-bit tag t
+     */
+    public byte[] tag() {
+        return mac.finish(512);
+    }
+}
@@ -0,0 +1,235 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * On-disk FixedBaseTable, so a process can map the precomputation an earlier
+ * process saved instead of repeating it. Tables live in the directory named by
+ * the system property kmacxof256.tables; without it nothing is read or
+ * written. A file is named after its base point and laid out, little-endian, as
+ * <ul>
+ * <li>a 128-byte header: the magic “KMPT”, a version, a curve identifier,
+ * the limb and window parameters and the compressed base point,</li>
+ * <li>the comb entries, SIZE * ENTRY limbs, mapped and used in place,</li>
+ * <li>the odd multiples for the NAF, X, Y, Z and T of each,</li>
+ * <li>a CRC32C of everything before it.</li>
+ * </ul>
+ * A file whose length, checksum or header does not match what this build
+ * would write is ignored and rebuilt. The checksum only catches damage, not
+ * tampering: the directory must be as trusted as the class files themselves.
+ * Files are written to a temporary name and moved into place, so processes
+ * sharing a directory never map a partial table.
+ * @author Ethan Nesel
+ */
+class TableFile {
+    /**
+     * Magic number at the start of every table file
+     */
+    private static final byte[] MAGIC = "KMPT".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * Current layout version
+     */
+    private static final int VERSION = 1;
+    /**
+     * Most tables the directory may hold before KeyRing stops saving key
+     * tables, about 77MB; the generator's table is saved regardless
+     */
+    static final int MAX_KEY_TABLES = 64;
+    /**
+     * Header length, padded so the limbs that follow are 8-byte aligned
+     */
+    private static final int HEADER_LENGTH = 128;
+    /**
+     * Odd multiples stored for the NAF, 2^(NAF_WINDOW - 2)
+     */
+    private static final int ODD_COUNT = 1 << (FixedBaseTable.NAF_WINDOW - 2);
+    /**
+     * Longs per stored odd multiple: X, Y, Z and T
+     */
+    private static final int ODD_ENTRY = 4 * FieldElement.LIMBS;
+    /**
+     * Length of the comb entries in bytes
+     */
+    private static final int ENTRIES_LENGTH = FixedBaseTable.SIZE * FixedBaseTable.ENTRY * Long.BYTES;
+    /**
+     * Length of the odd multiples in bytes
+     */
+    private static final int ODD_LENGTH = ODD_COUNT * ODD_ENTRY * Long.BYTES;
+    /**
+     * Length of a whole table file, checksum included
+     */
+    private static final int LENGTH = HEADER_LENGTH + ENTRIES_LENGTH + ODD_LENGTH + Integer.BYTES;
+    /**
+     * Identifier of the curve the tables belong to, cSHAKE256 over p, r and G.
+     * G = (4, y) also pins down d, since d = (x^2 + y^2 - 1) / (x^2 * y^2).
+     */
+    private static final byte[] CURVE_ID = new CSHAKE256().cSHAKE256(
+            Functions.concat(Functions.concat(Functions.encode_string(EllipticPoint.p.toByteArray()),
+                            Functions.encode_string(EllipticPoint.r.toByteArray())),
+                    Functions.concat(Functions.encode_string(EllipticPoint.G.getX().toByteArray()),
+                            Functions.encode_string(EllipticPoint.G.getY().toByteArray()))),
+            256, new byte[0], "Table Curve".getBytes(StandardCharsets.US_ASCII));
+
+    /**
+     * Check whether a table directory is configured
+     * @return true if tables are read from and saved to disk
+     */
+    static boolean enabled() {
+        return System.getProperty("kmacxof256.tables") != null;
+    }
+
+    /**
+     * Check whether the table directory has room for another key table
+     * @return true if it holds fewer than MAX_KEY_TABLES tables
+     */
+    static boolean hasRoom() {
+        int tables = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(
+                Paths.get(System.getProperty("kmacxof256.tables")), "*.table")) {
+            for (Path ignored : files) {
+                tables++;
+            }
+        } catch (IOException | RuntimeException e) {
+            //Not created yet, or unreadable: left to save, which fails quietly
+        }
+        return tables < MAX_KEY_TABLES;
+    }
+
+    /**
+     * Map the saved table of a base point
+     * @param base the base point
+     * @return the table, or null if there is no table directory or no usable
+     *         table for the point in it
+     */
+    static FixedBaseTable load(EllipticPoint base) {
+        if (!enabled()) {
+            return null;
+        }
+        try (FileChannel in = FileChannel.open(path(base), StandardOpenOption.READ)) {
+            if (in.size() != LENGTH) {
+                return null;
+            }
+            //The mapping stays valid once the channel is closed
+            MappedByteBuffer map = in.map(FileChannel.MapMode.READ_ONLY, 0, LENGTH);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            CRC32C crc = new CRC32C();
+            crc.update(map.duplicate().limit(LENGTH - Integer.BYTES));
+            if ((int) crc.getValue() != map.getInt(LENGTH - Integer.BYTES)) {
+                return null;
+            }
+            byte[] header = new byte[HEADER_LENGTH];
+            map.duplicate().get(header);
+            if (!Arrays.equals(header, header(base))) {
+                return null;
+            }
+            LongBuffer entries = section(map, HEADER_LENGTH, ENTRIES_LENGTH);
+            LongBuffer oddLimbs = section(map, HEADER_LENGTH + ENTRIES_LENGTH, ODD_LENGTH);
+            ExtendedPoint[] odd = new ExtendedPoint[ODD_COUNT];
+            for (int i = 0; i < ODD_COUNT; i++) {
+                odd[i] = new ExtendedPoint(oddLimbs, i * ODD_ENTRY);
+            }
+            return new FixedBaseTable(base, entries, new OddMultiples(odd, FixedBaseTable.NAF_WINDOW));
+        } catch (IOException | RuntimeException e) {
+            //Missing or unreadable: the caller builds the table instead
+            return null;
+        }
+    }
+
+    /**
+     * Save a table to the table directory, if there is one
+     * @param table the table to save
+     */
+    static void save(FixedBaseTable table) {
+        if (!enabled()) {
+            return;
+        }
+        ByteBuffer out = ByteBuffer.allocate(LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        out.put(header(table.base));
+        section(out, HEADER_LENGTH, ENTRIES_LENGTH).put(table.entries.duplicate().clear());
+        long[] odd = new long[ODD_COUNT * ODD_ENTRY];
+        for (int i = 0; i < ODD_COUNT; i++) {
+            table.odd.odd[i].store(odd, i * ODD_ENTRY);
+        }
+        section(out, HEADER_LENGTH + ENTRIES_LENGTH, ODD_LENGTH).put(odd);
+        CRC32C crc = new CRC32C();
+        crc.update(out.array(), 0, LENGTH - Integer.BYTES);
+        out.putInt(LENGTH - Integer.BYTES, (int) crc.getValue());
+
+        Path temp = null;
+        try {
+            Path file = path(table.base);
+            Files.createDirectories(file.getParent());
+            temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                Functions.writeFully(channel, out.clear());
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            //Not fatal: the table in memory is still used, and the next process tries again
+        } finally {
+            try {
+                if (temp != null) {
+                    Files.deleteIfExists(temp);
+                }
+            } catch (IOException e) {
+                //Leave the temporary file behind
+            }
+        }
+    }
+
+    /**
+     * Path of the table of a base point, named after a digest of the point
+     * @param base the base point
+     * @return the path in the table directory
+     */
+    private static Path path(EllipticPoint base) {
+        byte[] name = new CSHAKE256().cSHAKE256(base.toCompressed(), 128, new byte[0],
+                "Table Name".getBytes(StandardCharsets.US_ASCII));
+        return Paths.get(System.getProperty("kmacxof256.tables"), Functions.bytesToHex(name) + ".table");
+    }
+
+    /**
+     * Build the header a table of a base point starts with
+     * @param base the base point
+     * @return HEADER_LENGTH bytes, zero padded
+     */
+    private static byte[] header(EllipticPoint base) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC);
+        header.putInt(VERSION);
+        header.put(CURVE_ID);
+        //Limb layout and table shape, so a build with other parameters never reads this one
+        header.putInt(FieldElement.LIMBS);
+        header.putInt(FieldElement.BITS);
+        header.putInt(FixedBaseTable.WINDOW);
+        header.putInt(FixedBaseTable.DIGITS);
+        header.putInt(FixedBaseTable.NAF_WINDOW);
+        header.put(base.toCompressed());
+        return header.array();
+    }
+
+    /**
+     * View part of a table file as little-endian limbs
+     * @param file the whole file
+     * @param offset byte offset of the section
+     * @param length byte length of the section
+     * @return the limbs
+     */
+    private static LongBuffer section(ByteBuffer file, int offset, int length) {
+        //slice() resets the byte order, so it is set again on the slice
+        return file.duplicate().position(offset).limit(offset + length).slice()
+                .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+    }
+}